@@ -1,6 +1,7 @@
 package allocator;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 import gmi.GroupProxy;
 
@@ -13,10 +14,12 @@ public class AddressClient {
 	private boolean running;
 	private ArrayList<IPAddress> leaseList;
 	private ExternalAddressListener server;
+	private ExternalAddressListenerAsync asyncServer;
 
 	public AddressClient(String name, int port) {
 		groupProxy = new GroupProxy(this, name, port, groupname, address); 
 		server = (ExternalAddressListener) groupProxy.getServer();    
+		asyncServer = groupProxy.getAsyncServer(ExternalAddressListenerAsync.class);
 		leaseList = new ArrayList<IPAddress>();
 		clientID = groupProxy.getIdentifier();
 	}
@@ -78,16 +81,16 @@ public class AddressClient {
 				n++;
 				System.out.println("ATTEMPTING TO RENEW "+n+" LEASES.");
 				ArrayList<IPAddress> failedList = new ArrayList<IPAddress>();
+				//send all renewals at once, then collect the replies
+				ArrayList<CompletableFuture<IPAddress>> renewals = new ArrayList<CompletableFuture<IPAddress>>();
+				for (int i = 0; i < n; i++) {
+					renewals.add(asyncServer.renewLease(leaseList.get(i).getAddress()));
+				}
 				for (int i = 0; i < n; i++) {
 					IPAddress lease = leaseList.get(i);
 					IPAddress renewed = null;
 					try {
-						//for (int j = 0; j < 3; j++) {
-							renewed = server.renewLease(lease.getAddress());
-						/*	if (renewed != null) {
-								break;
-							}
-						}*/
+						renewed = renewals.get(i).join();
 					}	catch (Exception e) {
 						System.out.println("Server error.");
 						e.printStackTrace();
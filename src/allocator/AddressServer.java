@@ -7,6 +7,7 @@ import gmi.MembershipListener;
 import gmi.ServerSideProxy;
 import gmi.View;
 import gmi.protocols.Anycast;
+import gmi.protocols.Delivery;
 import gmi.protocols.Multicast;
 
 public class AddressServer implements MembershipListener, ExternalAddressListener, InternalAddressListener {
@@ -112,11 +113,11 @@ public class AddressServer implements MembershipListener, ExternalAddressListene
 	}
 
 	public Object success() {
-		return renewSuccess;
+		return renewSuccess == 1;
 	}
 	
 	public Object lease() {
-		return lease.toString();
+		return lease == null ? null : lease.toString();
 	}
 
 	public void ViewChange(View view) {
@@ -154,7 +155,7 @@ public class AddressServer implements MembershipListener, ExternalAddressListene
 		}
 	}
 	
-	@Multicast
+	@Multicast(delivery = Delivery.AGREED)
 	public void updateView(Object view, int code) {
 		IPAddress changedView = toIPAddress(view.toString());
 		if (code == AddressPool.NEWSERVER) {
@@ -168,9 +169,8 @@ public class AddressServer implements MembershipListener, ExternalAddressListene
 		}
 	}
 
-	@Multicast
+	@Multicast(replies = Multicast.Replies.MAJORITY)
 	public IPAddress renewLease(String address) {
-		boolean success = false;
 		IPAddress lease = null;
 		try {
 			lease = addressPoolView.renewLease(address, serverID);
@@ -185,19 +185,16 @@ public class AddressServer implements MembershipListener, ExternalAddressListene
 		else {
 			renewSuccess = 0;
 		}
-		Object[] status = new Object[0];
+		boolean success = false;
 		try {
-			status = (Object[])internalListener.success();
+			success = Boolean.TRUE.equals(internalListener.success());
 		} catch (Exception e) {
 			System.out.println("Crash from internalListener.success()");
 			e.printStackTrace();
 		}
-		for (int i = 0; i < status.length; i++) {
-			if (status[i] != null && status[i].toString().equals("1")) {
-				success = true;
-			}
-		}
 		if (success) {
+			// every member answers with its lease, the controller of the
+			// address is the one which broadcasts the renewal
 			Object[] leases = new Object[0];
 			try {
 				leases = (Object[])internalListener.lease();
@@ -1,9 +1,11 @@
 package allocator;
 
 import gmi.ExternalGMIListener;
+import gmi.protocols.ReplicateReply;
 
 public interface ExternalAddressListener extends ExternalGMIListener {
 	
+	@ReplicateReply
 	public IPAddress requestAddress(String clientID);
 	
 	public IPAddress renewLease(String address);
@@ -0,0 +1,15 @@
+package allocator;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Companion async view of ExternalAddressListener, used through
+ * GroupProxy.getAsyncServer() to have many requests outstanding at once.
+ */
+public interface ExternalAddressListenerAsync {
+	
+	public CompletableFuture<IPAddress> requestAddress(String clientID);
+	
+	public CompletableFuture<IPAddress> renewLease(String address);
+
+}
@@ -1,9 +1,11 @@
 package allocator;
 
 import gmi.InternalGMIListener;
+import gmi.protocols.Reduce;
 
 public interface InternalAddressListener extends InternalGMIListener {
 	
+	@Reduce(Reduce.Function.ANY_TRUE)
 	public Object success();
 	
 	public Object lease();
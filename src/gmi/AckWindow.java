@@ -0,0 +1,160 @@
+package gmi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**AckWindow keeps track of the acknowledgement and result state of the
+ * messages a GroupProxy has outstanding. It is a fixed size ring of slots
+ * indexed by message number, so the memory used stays the same however
+ * many messages are sent. A slot is taken when a message number is
+ * allocated and is given back as soon as the result for the message has
+ * arrived, if all slots are taken the sender waits for one to be freed.
+ *
+ * Each slot holds the message number in the upper 32 bits and the state
+ * flags in the lower bits, lookups only read the slot and never lock.
+ * A message whose slot has been recycled is reported as acknowledged.
+ */
+public class AckWindow {
+
+    private static final long IN_USE = 1, ACKED = 2;
+    private static final long FREE = 0;
+
+    private final AtomicLongArray slots;
+    private final AtomicInteger nextNumber = new AtomicInteger();
+    private final int mask;
+
+    /**
+     * @param capacity maximum number of outstanding messages, rounded up to
+     * a power of two
+     */
+    public AckWindow(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    /**Allocates the next message number and takes its slot, waits while the
+     * slot is still used by a message which has not completed yet.
+     *
+     * @return message number of the new message
+     */
+    public int acquire() {
+        int number = nextNumber.getAndIncrement() & Integer.MAX_VALUE;
+        int index = number & mask;
+        long taken = ((long) number << 32) | IN_USE;
+        while(!slots.compareAndSet(index, FREE, taken)) {
+            synchronized(this) {
+                if(slots.get(index) != FREE) {
+                    try {
+                        this.wait(100);
+                    }
+                    catch(InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+        return number;
+    }
+
+    /**Allocates the next message number and takes its slot if the slot is
+     * free, without waiting, for callers which must not block such as the
+     * timer threads.
+     *
+     * @return message number of the new message, or -1 if the window is full
+     */
+    public int tryAcquire() {
+        int next = nextNumber.get();
+        while(true) {
+            int number = next & Integer.MAX_VALUE;
+            int index = number & mask;
+            if(slots.get(index) != FREE) {
+                return -1;
+            }
+            if(nextNumber.compareAndSet(next, next + 1)) {
+                // a waiting acquire() may take the slot first, the number is then skipped
+                return slots.compareAndSet(index, FREE, ((long) number << 32) | IN_USE) ? number : -1;
+            }
+            next = nextNumber.get();
+        }
+    }
+
+    /**Marks that the server has acknowledged the message.
+     *
+     * @param number message number
+     */
+    public void acknowledge(int number) {
+        setFlag(number, ACKED);
+    }
+
+    /**Clears the acknowledgement of a message which is sent again.
+     *
+     * @param number message number
+     */
+    public void retransmit(int number) {
+        int index = number & mask;
+        long value = slots.get(index);
+        while(isSlotOf(value, number) && (value & ACKED) != 0) {
+            if(slots.compareAndSet(index, value, value & ~ACKED)) {
+                return;
+            }
+            value = slots.get(index);
+        }
+    }
+
+    /**Marks that the result for the message has arrived or that it will not
+     * be waited for any more, and gives the slot back.
+     *
+     * @param number message number
+     */
+    public void complete(int number) {
+        int index = number & mask;
+        long value = slots.get(index);
+        while(isSlotOf(value, number)) {
+            if(slots.compareAndSet(index, value, FREE)) {
+                synchronized(this) {
+                    this.notifyAll();
+                }
+                return;
+            }
+            value = slots.get(index);
+        }
+    }
+
+    public boolean isAcknowledged(int number) {
+        long value = slots.get(number & mask);
+        return !isSlotOf(value, number) || (value & ACKED) != 0;
+    }
+
+    public boolean isCompleted(int number) {
+        return !isSlotOf(slots.get(number & mask), number);
+    }
+
+    /**
+     * @return number of messages which are outstanding at the moment
+     */
+    public int getOutstanding() {
+        int count = 0;
+        for(int i = 0; i < slots.length(); i++) {
+            if(slots.get(i) != FREE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void setFlag(int number, long flag) {
+        int index = number & mask;
+        long value = slots.get(index);
+        while(isSlotOf(value, number) && (value & flag) == 0) {
+            if(slots.compareAndSet(index, value, value | flag)) {
+                return;
+            }
+            value = slots.get(index);
+        }
+    }
+
+    private static boolean isSlotOf(long value, int number) {
+        return value != FREE && (int) (value >>> 32) == number;
+    }
+}
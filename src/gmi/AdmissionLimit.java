@@ -0,0 +1,78 @@
+package gmi;
+
+/**AdmissionLimit bounds the number of requests a server accepts at the same
+ * time. A request is accepted while fewer than the limit are outstanding,
+ * otherwise it is refused and the client sends it to another member. The
+ * limit adapts like the congestion window of TCP (AIMD): it grows by one
+ * per limit requests completed within the latency threshold while the
+ * server is busy, and is cut by DECREASE when a request takes longer or
+ * fails, never below min or above max. With min equal to max it is a fixed
+ * concurrency limit.
+ */
+public class AdmissionLimit {
+
+    // factor by which the limit is cut when a request is slow
+    public static final double DECREASE = 0.9;
+    private final int min, max;
+    private final long threshold;
+    private double limit;
+    private int outstanding = 0;
+
+    /**
+     * @param initial limit at the start
+     * @param min lowest limit
+     * @param max highest limit
+     * @param threshold latency in milliseconds above which a request counts as slow
+     */
+    public AdmissionLimit(int initial, int min, int max, long threshold) {
+        this.min = min;
+        this.max = max;
+        this.threshold = threshold;
+        limit = Math.max(min, Math.min(max, initial));
+    }
+
+    /**A fixed limit on the number of requests accepted at the same time.
+     *
+     * @param limit number of requests
+     */
+    public AdmissionLimit(int limit) {
+        this(limit, limit, limit, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return true if the request is accepted, then release() must be
+     * called when it is completed
+     */
+    public synchronized boolean tryAcquire() {
+        if(outstanding >= (int) limit) {
+            return false;
+        }
+        outstanding++;
+        return true;
+    }
+
+    /**Called when an accepted request is completed.
+     *
+     * @param latency time in milliseconds from accepting to answering the request
+     * @param failed true if the request was not executed, as when it was
+     * rejected by the workers or no reply came
+     */
+    public synchronized void release(long latency, boolean failed) {
+        outstanding--;
+        if(failed || latency > threshold) {
+            limit = Math.max(min, limit * DECREASE);
+        }
+        else if(outstanding * 2 >= (int) limit) {
+            // only grow while the limit is actually used
+            limit = Math.min(max, limit + 1 / limit);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+}
@@ -0,0 +1,378 @@
+package gmi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**BinaryMessageCodec is the default MessageCodec. It writes the fields of a
+ * Message in a compact binary form instead of Java serializing it:
+ * numbers, including the method ID, are written as variable length
+ * integers, the message type as one byte and the strings (method
+ * signature, sender, group name and string values) through a table, so a
+ * string which occurs more than once in a message, as in a batch, is
+ * written only once and decoded to the same String instance. the table
+ * starts with the private group of the connection the message is sent on
+ * and the group it talks to, which the receiver knows from the Spread
+ * message and its own connection, so the sender and group IDs are written
+ * as one byte references instead of their names. Strings, numbers, booleans, byte arrays, messages
+ * and arrays of objects, strings and messages are encoded by hand, other
+ * values are Java serialized.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    // first byte of every encoded message, never the first byte of a
+    // Java serialization stream
+    private static final int MAGIC = 0x47;
+    private static final int VERSION = 5;
+
+    // message types
+    private static final int TYPE_NULL = 0, TYPE_REQUEST = 1, TYPE_REPLY = 2, TYPE_OTHER = 3;
+
+    // value tags
+    private static final int NULL = 0, STRING = 1, INT = 2, LONG = 3, TRUE = 4, FALSE = 5,
+            DOUBLE = 6, BYTES = 7, MESSAGE = 8, OBJECTS = 9, MESSAGES = 10, STRINGS = 11,
+            SERIALIZED = 12;
+
+    // the private group of the connection and the group it talks to are
+    // the first entries of the string table
+    private static final int CONNECTION_NAMES = 2;
+
+    public byte[] encode(Message message) throws IOException {
+        return encode(message, null, null);
+    }
+
+    public byte[] encode(Message message, String sender, String group) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        Encoder encoder = new Encoder(new DataOutputStream(bytes), sender, group);
+        encoder.out.writeByte(MAGIC);
+        encoder.out.writeByte(VERSION);
+        encoder.writeMessage(message);
+        encoder.out.flush();
+        return bytes.toByteArray();
+    }
+
+    public Message decode(byte[] data) throws IOException {
+        return decode(data, null, null);
+    }
+
+    public Message decode(byte[] data, String sender, String group) throws IOException {
+        Decoder decoder = new Decoder(new DataInputStream(new ByteArrayInputStream(data)), sender, group);
+        if(decoder.in.readUnsignedByte() != MAGIC) {
+            throw new IOException("Not a binary gmi message");
+        }
+        int version = decoder.in.readUnsignedByte();
+        if(version != VERSION) {
+            throw new IOException("Unsupported message version "+version);
+        }
+        return decoder.readMessage();
+    }
+
+    private static class Encoder {
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+        // number of strings in the table, including the names of the connection
+        private int count = CONNECTION_NAMES;
+
+        Encoder(DataOutputStream out, String sender, String group) {
+            this.out = out;
+            if(group != null) {
+                strings.put(group, 1);
+            }
+            if(sender != null) {
+                strings.put(sender, 0);
+            }
+        }
+
+        void writeMessage(Message message) throws IOException {
+            writeVarInt(zigzag(message.getMessageNumber()));
+            writeVarInt(zigzag(message.getMethodId()));
+            String type = message.getMessageType();
+            if(type == null) {
+                out.writeByte(TYPE_NULL);
+            }
+            else if(type.equals("Request")) {
+                out.writeByte(TYPE_REQUEST);
+            }
+            else if(type.equals("Reply")) {
+                out.writeByte(TYPE_REPLY);
+            }
+            else {
+                out.writeByte(TYPE_OTHER);
+                writeString(type);
+            }
+            writeString(message.getMethodSignature());
+            writeString(message.getOriginalSender());
+            writeString(message.getGroupName());
+            writeVarInt(message.getInFlight());
+            writeVarInt(message.getQueueDepth());
+            writeVarLong(message.getStateVersion());
+            writeValue(message.getResult());
+            writeValue(message.getArguments());
+        }
+
+        void writeValue(Object value) throws IOException {
+            if(value == null) {
+                out.writeByte(NULL);
+            }
+            else if(value instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            }
+            else if(value instanceof Integer) {
+                out.writeByte(INT);
+                writeVarInt(zigzag((Integer) value));
+            }
+            else if(value instanceof Long) {
+                out.writeByte(LONG);
+                writeVarLong(zigzag((Long) value));
+            }
+            else if(value instanceof Boolean) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            }
+            else if(value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            }
+            else if(value instanceof byte[]) {
+                byte[] data = (byte[]) value;
+                out.writeByte(BYTES);
+                writeVarInt(data.length);
+                out.write(data);
+            }
+            else if(value.getClass() == Message.class) {
+                out.writeByte(MESSAGE);
+                writeMessage((Message) value);
+            }
+            else if(value.getClass() == Object[].class) {
+                out.writeByte(OBJECTS);
+                writeArray((Object[]) value);
+            }
+            else if(value.getClass() == Message[].class) {
+                out.writeByte(MESSAGES);
+                writeArray((Object[]) value);
+            }
+            else if(value.getClass() == String[].class) {
+                out.writeByte(STRINGS);
+                writeArray((Object[]) value);
+            }
+            else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream serializer = new ObjectOutputStream(bytes);
+                serializer.writeObject(value);
+                serializer.close();
+                out.writeByte(SERIALIZED);
+                writeVarInt(bytes.size());
+                bytes.writeTo(out);
+            }
+        }
+
+        void writeArray(Object[] values) throws IOException {
+            writeVarInt(values.length);
+            for(Object value : values) {
+                writeValue(value);
+            }
+        }
+
+        /**Writes 0 for null, the index of the string plus one if it has been
+         * written before, otherwise the next index plus one, the length of the
+         * string in UTF-8 and its UTF-8 bytes, so it is not limited to 64 KB.
+         */
+        void writeString(String value) throws IOException {
+            if(value == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if(index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            strings.put(value, count++);
+            writeVarInt(count);
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            out.write(utf8);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            while((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+
+        static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static class Decoder {
+        private final DataInputStream in;
+        private final ArrayList<String> strings = new ArrayList<String>();
+
+        Decoder(DataInputStream in, String sender, String group) {
+            this.in = in;
+            strings.add(sender);
+            strings.add(group);
+        }
+
+        Message readMessage() throws IOException {
+            Message message = new Message();
+            message.setMessageNumber(unzigzag(readVarInt()));
+            message.setMethodId(unzigzag(readVarInt()));
+            int type = in.readUnsignedByte();
+            switch(type) {
+                case TYPE_NULL:
+                    break;
+                case TYPE_REQUEST:
+                    message.setMessageType("Request");
+                    break;
+                case TYPE_REPLY:
+                    message.setMessageType("Reply");
+                    break;
+                case TYPE_OTHER:
+                    message.setMessageType(readString());
+                    break;
+                default:
+                    throw new IOException("Unknown message type "+type);
+            }
+            message.setMethodSignature(readString());
+            message.setOriginalSender(readString());
+            message.setGroupName(readString());
+            int inFlight = readVarInt();
+            message.setLoad(inFlight, readVarInt());
+            message.setStateVersion(readVarLong());
+            message.setResult(readValue());
+            message.setArguments((Object[]) readValue());
+            return message;
+        }
+
+        Object readValue() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch(tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case INT:
+                    return unzigzag(readVarInt());
+                case LONG:
+                    return unzigzag(readVarLong());
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case DOUBLE:
+                    return in.readDouble();
+                case BYTES:
+                    byte[] data = new byte[readVarInt()];
+                    in.readFully(data);
+                    return data;
+                case MESSAGE:
+                    return readMessage();
+                case OBJECTS:
+                    return readArray(new Object[readVarInt()]);
+                case MESSAGES:
+                    return readArray(new Message[readVarInt()]);
+                case STRINGS:
+                    return readArray(new String[readVarInt()]);
+                case SERIALIZED:
+                    byte[] serialized = new byte[readVarInt()];
+                    in.readFully(serialized);
+                    ObjectInputStream deserializer = new ObjectInputStream(new ByteArrayInputStream(serialized));
+                    try {
+                        return deserializer.readObject();
+                    }
+                    catch(ClassNotFoundException e) {
+                        throw new IOException(e);
+                    }
+                    finally {
+                        deserializer.close();
+                    }
+                default:
+                    throw new IOException("Unknown value tag "+tag);
+            }
+        }
+
+        Object[] readArray(Object[] values) throws IOException {
+            for(int i = 0; i < values.length; i++) {
+                values[i] = readValue();
+            }
+            return values;
+        }
+
+        String readString() throws IOException {
+            int index = readVarInt();
+            if(index == 0) {
+                return null;
+            }
+            if(index <= strings.size()) {
+                String value = strings.get(index - 1);
+                if(value == null) {
+                    throw new IOException("Message refers to a name of a connection which is not known");
+                }
+                return value;
+            }
+            if(index != strings.size() + 1) {
+                throw new IOException("Bad string reference "+index);
+            }
+            byte[] utf8 = new byte[readVarInt()];
+            in.readFully(utf8);
+            String value = new String(utf8, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for(int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for(int shift = 0; shift < 70; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+
+        static int unzigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package gmi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**ChunkOutputStream cuts what is written to it into chunks of a fixed size
+ * and hands each to chunk() as soon as the next one is started, so the
+ * state serialized into it is sent while it is written and never held as
+ * one array. one chunk is kept back to know which is the last, it is sent
+ * by close(), which sends an empty last chunk if nothing was written.
+ */
+public abstract class ChunkOutputStream extends OutputStream {
+
+    private final byte[] buffer;
+    private int count = 0;
+    // full chunk not sent yet, null if none
+    private byte[] pending;
+    private int index = 0;
+    private boolean closed = false;
+
+    /**
+     * @param size bytes in every chunk but the last
+     */
+    public ChunkOutputStream(int size) {
+        buffer = new byte[size];
+    }
+
+    /**Sends one chunk.
+     *
+     * @param index number of the chunk, starting at 0
+     * @param chunk bytes of the chunk
+     * @param last true for the last chunk
+     */
+    protected abstract void chunk(int index, byte[] chunk, boolean last) throws IOException;
+
+    public void write(int b) throws IOException {
+        if(count == buffer.length) {
+            cut();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            if(count == buffer.length) {
+                cut();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void cut() throws IOException {
+        if(pending != null) {
+            chunk(index++, pending, false);
+        }
+        pending = Arrays.copyOf(buffer, count);
+        count = 0;
+    }
+
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        if(count > 0 || pending == null) {
+            cut();
+        }
+        chunk(index++, pending, true);
+        pending = null;
+    }
+}
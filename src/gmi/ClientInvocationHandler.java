@@ -4,6 +4,11 @@ package gmi;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import gmi.protocols.Idempotent;
+import gmi.protocols.Timeout;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 
@@ -13,10 +18,18 @@ import java.util.HashMap;
 public class ClientInvocationHandler implements InvocationHandler{
     
     private GroupProxy groupproxy;
-    private boolean waitingResult = true;
-    private Object result;
     private Object serverStub;
     private HashMap<Integer, String> egmitable;
+    private HashMap<String, String> asyncTable;
+    // external methods by signature, their annotations apply to the async ones
+    private HashMap<String, Method> declared;
+    // method IDs the server gave with the stub, by signature
+    private HashMap<String, Integer> idTable;
+    // method IDs of the methods invoked so far
+    private ConcurrentHashMap<Method, Integer> methodIds;
+    // external method of each method invoked so far
+    private ConcurrentHashMap<Method, Method> externalMethods;
+    private ConcurrentHashMap<Integer, CompletableFuture<Object>> pendingCalls;
     private boolean firsttime = true;
     private final boolean DEBUG = false;
     
@@ -28,12 +41,22 @@ public class ClientInvocationHandler implements InvocationHandler{
     public ClientInvocationHandler(GroupProxy proxy)  {
         groupproxy = proxy;       
         egmitable = new HashMap<Integer, String>();       
+        asyncTable = new HashMap<String, String>();
+        declared = new HashMap<String, Method>();
+        idTable = new HashMap<String, Integer>();
+        methodIds = new ConcurrentHashMap<Method, Integer>();
+        externalMethods = new ConcurrentHashMap<Method, Method>();
+        pendingCalls = new ConcurrentHashMap<Integer, CompletableFuture<Object>>();
     }
     
     /**
      * Invoke method is called by java reflection every time when any method
-     * is called on methos object. in this we wait untill we get reply from 
-     * server and send received reply back to client application.
+     * is called on methos object. every invocation is registered in the table
+     * of pending calls under its message number before it is sent, so any
+     * number of threads can have a call outstanding on the same stub and each
+     * of them waits only for the reply carrying its own message number.
+     * Methods declared to return a <code>CompletableFuture</code> do not wait
+     * at all, they return a future which is completed when the reply arrives.
      * @param proxy
      * @param m Method which is to be invoked on server
      * @param args Arguments passed for method 
@@ -44,48 +67,140 @@ public class ClientInvocationHandler implements InvocationHandler{
     
     public Object invoke(Object proxy, Method m, Object[] args)
            throws Throwable {    
-    String signature = getNameAndDescriptor(m);    
-    if(firsttime){       
-        serverStub = groupproxy.getServer();        
-        methodTable();
-        firsttime = false;
+    synchronized(this) {
+        if(firsttime){       
+            serverStub = groupproxy.getServer();        
+            methodTable();
+            firsttime = false;
+        }
+    }
+    String signature = null;
+    Integer methodId = methodIds.get(m);
+    Method external = externalMethods.get(m);
+    if(methodId == null || external == null){
+        signature = getSignature(m);
+        if(signature == null){
+             throw new Error("Method \""+m.getName()+"\" is not defined.");                  
+        }
+        methodId = idTable.get(signature);
+        if(methodId != null){
+            methodIds.put(m, methodId);
+        }
+        external = declared.get(signature);
+        externalMethods.put(m, external);
+    }
+    // an async method has the annotations of the external method, unless it declares its own
+    Timeout timeout = m.getAnnotation(Timeout.class);
+    if(timeout == null) {
+        timeout = external.getAnnotation(Timeout.class);
+    }
+    Idempotent idempotent = m.getAnnotation(Idempotent.class);
+    if(idempotent == null) {
+        idempotent = external.getAnnotation(Idempotent.class);
     }
-    if(egmitable.containsKey(signature.hashCode())){
+    CompletableFuture<Object> call = send(signature, methodId, args, timeout, idempotent);
+    if(m.getReturnType() == CompletableFuture.class) {
+        return call;
+    }
+    try {
+        return call.join();
+    }
+    catch(CompletionException e) {
+        throw e.getCause();
+    }
+    }
+    
+    /**
+     * Sends the invocation request to one of the servers and returns the
+     * future which is completed with the reply.
+     * @param signature signature of the method to invoke on the server,
+     * only used if there is no method ID
+     * @param methodId ID of the method on the server, or null
+     * @param args Arguments passed for method
+     * @param timeout timeouts declared for the method, or null
+     * @param idempotent set if the request may be hedged, or null
+     * @return future completed with the result, or completed exceptionally
+     * with the exception thrown by the method on the server
+     */
+    private CompletableFuture<Object> send(String signature, Integer methodId, Object[] args, Timeout timeout, Idempotent idempotent) {
         Message message = new Message();
-        message.setMethodSignature(signature);       
+        if(methodId != null) {
+            message.setMethodId(methodId);
+        }
+        else {
+            message.setMethodSignature(signature);       
+        }
         message.setArguments(args);     
+        message.setMessageNumber(groupproxy.nextMessageNumber());
+        CompletableFuture<Object> call = new CompletableFuture<Object>();
+        pendingCalls.put(message.getMessageNumber(), call);
         String server = groupproxy.getServerAddress();
-        groupproxy.sendMessagetoServer(server, message);
+        groupproxy.sendMessagetoServer(server, message, timeout, idempotent);
         if(DEBUG) {
-            System.out.println("Sending message: "+message.getMethodSignature()+" arguments: "+args[0]);
+            System.out.println("Sending message: "+(methodId != null ? "#"+methodId : signature)+" number: "+message.getMessageNumber());
         }
-        synchronized(this) {
-               while(waitingResult) {
-                   try {
-                       this.wait();                       
-                    }
-                    catch(InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-               waitingResult = true;
-        }
-    } else {
-         throw new Error("Method \""+m.getName()+"\" is not defined.");                  
-    }
-    if(DEBUG) {
-        System.out.println("result is: "+result);
+        return call;
     }
-    if(result instanceof Exception){
-        throw (Throwable) result;       
+    
+    /**
+     * Returns the signature under which the server knows the method. a method
+     * of a companion async interface, which returns a <code>CompletableFuture</code>
+     * and is not declared by the server, is mapped to the external method with
+     * the same name and parameter types.
+     * @param m method invoked on the stub
+     * @return signature of the server method, or null if there is none
+     */
+    private String getSignature(Method m) {
+        String signature = getNameAndDescriptor(m);
+        if(egmitable.containsKey(signature.hashCode())){
+            return signature;
+        }
+        if(m.getReturnType() == CompletableFuture.class) {
+            return asyncTable.get(getParameterDescriptor(m));
+        }
+        return null;
     }
-    return result;
+    
+    /**
+     * Called by GroupProxy with the table of method IDs the server sent with
+     * the stub, before the stub is handed out. the ID of a method is its
+     * index in the table. servers which send no table are invoked by
+     * signature.
+     * @param signatures signatures of the external methods by ID, or null
+     */
+    public void setMethodIds(Object[] signatures) {
+        if(signatures == null) {
+            return;
+        }
+        for(int i=0; i<signatures.length; i++) {
+            idTable.put((String) signatures[i], i);
+        }
     }
-    public void getResult(Object result) {
-        this.result = result;
-        synchronized(this){
-            waitingResult = false;
-            notifyAll();
+    
+    /**
+     * Called by GroupProxy when a reply arrives, completes the call which
+     * is waiting for this message number. Replies for calls which are already
+     * completed (e.g. a late reply from a server we have timed out on) are
+     * dropped.
+     * @param messageNumber number of the request this reply belongs to
+     * @param result result returned by the server
+     */
+    public void getResult(int messageNumber, Object result) {
+        CompletableFuture<Object> call = pendingCalls.remove(messageNumber);
+        if(call == null) {
+            if(DEBUG) {
+                System.out.println("Dropping reply for message number: "+messageNumber);
+            }
+            return;
+        }
+        if(DEBUG) {
+            System.out.println("result is: "+result);
+        }
+        if(result instanceof Exception){
+            call.completeExceptionally((Exception) result);
+        }
+        else {
+            call.complete(result);
         }
     }
     
@@ -93,6 +208,8 @@ public class ClientInvocationHandler implements InvocationHandler{
      * This method is used to make the method table of declared methods in 
      * interface extending ExternalGMIListener, so that if client try to invoke 
      * undefined method then we raise error message saying method is not defined.
+     * the methods are also stored by name and parameter types to map methods
+     * of companion async interfaces onto them.
      * 
      */
     
@@ -105,6 +222,8 @@ public class ClientInvocationHandler implements InvocationHandler{
                    int key = name.hashCode();
                    //System.out.println("Name: "+name+" key: "+key+ " method: "+methods[j]);
                    egmitable.put(key,name);                                      
+                   declared.put(name, methods[j]);
+                   asyncTable.put(getParameterDescriptor(methods[j]), name);
                  }                                           
             }
     }
@@ -135,6 +254,23 @@ public class ClientInvocationHandler implements InvocationHandler{
     return desc.toString();
   }
 
+  /** Returns the method name and parameter types without the return type,
+   * which is what a method of a companion async interface has in common
+   * with the external method it invokes.
+   * @param method method of which descriptor is needed
+   * @return name and parameter descriptor of the method
+   */
+    
+  public static String getParameterDescriptor(Method method) {
+    StringBuilder desc = new StringBuilder();
+    desc.append(method.getName());
+    Class[] paramTypes = method.getParameterTypes();
+    for (int i = 0; i < paramTypes.length; i++) {
+      desc.append(getTypeDescriptor(paramTypes[i]));
+    }
+    return desc.toString();
+  }
+
   /**
    * Get the descriptor of a particular type, as appropriate for either
    * a parameter or return type in a method descriptor.
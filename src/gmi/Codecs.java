@@ -0,0 +1,57 @@
+package gmi;
+
+import java.io.IOException;
+
+/**Codecs holds the MessageCodec used to encode the messages sent by this
+ * process, BinaryMessageCodec unless another one is set. Received messages
+ * which are Java serialized are recognised by their stream header and are
+ * decoded with Java serialization whatever codec is set.
+ */
+public class Codecs {
+
+    private static volatile MessageCodec codec = new BinaryMessageCodec();
+    private static final MessageCodec serialized = new SerializedMessageCodec();
+
+    /**Sets the codec used for the messages sent from now on. it must be set
+     * before any GroupProxy or ServerSideProxy is created.
+     *
+     * @param messageCodec codec to use
+     */
+    public static void setCodec(MessageCodec messageCodec) {
+        codec = messageCodec;
+    }
+
+    public static MessageCodec getCodec() {
+        return codec;
+    }
+
+    public static byte[] encode(Message message) throws IOException {
+        return codec.encode(message);
+    }
+
+    public static Message decode(byte[] data) throws IOException {
+        if(data.length > 1 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED) {
+            return serialized.decode(data);
+        }
+        return codec.decode(data);
+    }
+
+    /**
+     * @param sender private group of the connection the message is sent on
+     * @param group group the connection talks to
+     */
+    public static byte[] encode(Message message, String sender, String group) throws IOException {
+        return codec.encode(message, sender, group);
+    }
+
+    /**
+     * @param sender private group of the connection which sent the message
+     * @param group group the connection talks to
+     */
+    public static Message decode(byte[] data, String sender, String group) throws IOException {
+        if(data.length > 1 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED) {
+            return serialized.decode(data);
+        }
+        return codec.decode(data, sender, group);
+    }
+}
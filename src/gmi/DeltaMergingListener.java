@@ -0,0 +1,43 @@
+package gmi;
+
+/**
+ * DeltaMergingListener is implemented instead of MergingListener by servers
+ * which keep a log of the changes to their state. after a membership change
+ * every member advertises the version of its state and the leader sends it
+ * only the changes since that version, or the whole state from getState()
+ * in chunks, as the global state, when it does not have them any more, so
+ * bringing a member up to date costs what has changed while it was away and
+ * not the size of the state.
+ */
+public interface DeltaMergingListener extends MergingListener {
+
+  /**
+   *  Method <code>getStateVersion</code> is invoked to advertise the
+   *  version of the state of the member to the leader.
+   *
+   *  @return
+   *    The version of the state, which grows with every change
+   */
+  public long getStateVersion();
+
+  /**
+   *  Method <code>getChanges</code> is invoked in the leader to get the
+   *  changes a member with the given version has not seen.
+   *
+   *  @param version
+   *    The version advertised by the member
+   *  @return
+   *    The changes since the version, or null if they are not kept any
+   *    more or the version is not one of the leader
+   */
+  public Object getChanges(long version);
+
+  /**
+   *  Method <code>putChanges</code> is invoked to apply the changes sent
+   *  by the leader to the state of the member.
+   *
+   *  @param changes
+   *    The changes since the version the member advertised
+   */
+  public void putChanges(Object changes);
+}
@@ -0,0 +1,34 @@
+package gmi;
+
+import java.lang.reflect.Method;
+
+/**Dispatcher is implemented by the classes which StubProcessor generates
+ * for the GMI interfaces of an application. It lists the methods of the
+ * interface, from which MethodTable builds its tables, and calls them
+ * directly, with the arguments unpacked from the array, instead of through
+ * reflection.
+ */
+public interface Dispatcher {
+
+    /**
+     * @return signatures of the methods of the interface, in the form given
+     * by MethodTable.getNameAndDescriptor(), the index of a signature is the
+     * index which dispatch() takes for the method
+     */
+    String[] getSignatures();
+
+    /**
+     * @return methods of the interface, in the same order as getSignatures()
+     */
+    Method[] getMethods();
+
+    /**Invokes a method of the interface on the target.
+     *
+     * @param index index of the method in getSignatures()
+     * @param target object implementing the interface
+     * @param args arguments of the method
+     * @return result of the method, boxed if it is primitive, null if void
+     * @throws Throwable whatever the method throws
+     */
+    Object dispatch(int index, Object target, Object[] args) throws Throwable;
+}
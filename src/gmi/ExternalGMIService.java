@@ -5,6 +5,11 @@ package gmi;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
+import gmi.protocols.Delivery;
+import gmi.protocols.ReplicateReply;
+import gmi.protocols.Multicast;
+import gmi.protocols.ReadOnly;
 
 /**ExternalGMIService is used by sever side proxy to handle the
  * Method invocation request by client. this invoke the requested method on
@@ -13,8 +18,21 @@ import java.util.HashMap;
  */
 
 public class ExternalGMIService implements InvocationHandler{
+    // default number of workers and size of the queue of waiting requests of each
+    public static final int WORKERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    public static final int QUEUE_CAPACITY = 1024;
+    // number of requests remembered by the reply cache and for how long
+    public static final int REPLY_CACHE_SIZE = 10000;
+    public static final long REPLY_CACHE_EXPIRY = 60000;
+    // time in milliseconds a ReadOnly request waits for this member to catch
+    // up with the state its client has seen, before the client is told to
+    // send it to another member
+    public static final long READ_WAIT = 1000;
     private ServerSideProxy proxy;   
-    private ExternalInvocationHandler invocationHandler;
+    // requests of the same client are executed in order on one worker
+    private volatile StripedExecutor workers;
+    private ReplyCache replyCache = new ReplyCache(REPLY_CACHE_SIZE, REPLY_CACHE_EXPIRY);
+    private VersionWaiters readers = new VersionWaiters(READ_WAIT);
     private Object server, obj="null";             
     private int size,key;   
     private HashMap<Integer,Object[]> resultMap;
@@ -24,7 +42,31 @@ public class ExternalGMIService implements InvocationHandler{
         this.proxy = proxy;  
         this.server = server; 
         resultMap = new HashMap<Integer,Object[]>();
-        invocationHandler = new ExternalInvocationHandler(proxy, server);
+        workers = new StripedExecutor("gmi-worker", WORKERS, QUEUE_CAPACITY);
+    }
+    
+    /**
+     * Replaces the workers which execute the requests. requests which are
+     * waiting for the old workers are still executed by them. the requests
+     * of one client are always executed by the same worker in the order they
+     * were received, the requests of different clients in parallel. the order
+     * is not kept between a request executed by the old and one executed by
+     * the new workers.
+     * @param threads number of workers
+     * @param queueCapacity number of requests which can wait for each worker,
+     * requests beyond that are answered with a RejectedExecutionException
+     */
+    public void setWorkerPool(int threads, int queueCapacity) {
+        StripedExecutor old = workers;
+        workers = new StripedExecutor("gmi-worker", threads, queueCapacity);
+        old.shutdown();
+    }
+    
+    /**
+     * @return number of accepted requests waiting for a worker
+     */
+    public int getQueueDepth() {
+        return workers.getQueueDepth();
     }
     
     /**
@@ -43,8 +85,9 @@ public class ExternalGMIService implements InvocationHandler{
      * received method invocation request from the client or one of the servers
      * in multicast semantics case. it chekcs if request has multicast semantics
      * it creates a result array and store it in resultmap with key as methodsignature,
-     * sender and messagenumber. it create a ExternalInvocationHandler Thread on each 
-     * request to invoke the requested method on server application. 
+     * sender and messagenumber. it creates an ExternalInvocationHandler for each 
+     * request and submits it to the worker pool to invoke the requested method on
+     * server application. 
      * @param m Method which need to be invoked.
      * @param protocol Protocal which is used to handle this invocation request.
      * @param methodSignature Method signature used to identify the unique method from table
@@ -54,51 +97,190 @@ public class ExternalGMIService implements InvocationHandler{
      * Multicast semantics case to multicast among the server group.
      */
     
-     synchronized public void invokeMethod(Method m, String protocol,String methodSignature, Object[] args, String sender, Message message){
+     synchronized public void invokeMethod(Method m, String protocol,String methodSignature, Object[] args, final String sender, final Message message){
         size = proxy.getCurrentView().getView().size();  
-        if(protocol.equals("Multicast") && !proxy.getCurrentView().getView().contains(sender) && message.getMessageType().equals("Request") && size>1) {
-            Object[] serverResult = new Object[size+3];
+        boolean fromMember = proxy.getCurrentView().getView().contains(sender);
+        ReadOnly readOnly = proxy.getReadOnly(methodSignature);
+        if(readOnly != null && !fromMember && message.getMessageType().equals("Request")) {
+            // read only, executed here like an Anycast request once this
+            // member has applied the state the client has seen, less maxLag
+            final ExternalInvocationHandler invocation = new ExternalInvocationHandler(this, proxy, server, m, "Anycast", methodSignature, args, sender, message, null, false, false);
+            long needed = readOnly.maxLag() < 0 ? 0 : message.getStateVersion() - readOnly.maxLag();
+            readers.await(needed, new Runnable() {
+                public void run() {
+                    execute(invocation, null);
+                }
+            }, new Runnable() {
+                public void run() {
+                    proxy.refuse(sender, message.getMessageNumber());
+                }
+            });
+            return;
+        }
+        if(protocol.equals("Multicast") && !proxy.getCurrentView().getView().contains(sender) && message.getMessageType().equals("Request") && size>1
+                && !resultMap.containsKey((methodSignature+sender+message.getMessageNumber()).hashCode())) {
+            // count, sender, validity, message number, replies needed and the
+            // results, kept when the client sends the request again
+            Object[] serverResult = new Object[size+5];
             serverResult[0]=(Integer)0;
             serverResult[1]=(String)sender;
             serverResult[2]="Valid";
+            serverResult[3]=(Integer)message.getMessageNumber();
+            serverResult[4]=(Integer)getNeeded(proxy.getMulticast(methodSignature));
             key = (methodSignature+sender+message.getMessageNumber()).hashCode();            
             resultMap.put(key,serverResult);
-            Thread timer = new Thread(new ExternalInvocationTimer(this, key, methodSignature));
-            timer.start();
+            TimerService.schedule(new ExternalInvocationTimer(this, key, methodSignature), ExternalInvocationTimer.DELAY);
         }         
         if(message.getMessageType().equals("Reply")){
             key = (methodSignature+message.getOriginalSender()+message.getMessageNumber()).hashCode();
             int count = 0;
+            boolean enough = false;
             try{
                 Object[] serverResult = (Object[]) resultMap.get(key);
                 if(((String)serverResult[2]).equals("Valid")){
                 count = (Integer) serverResult[0];                  
-                serverResult[count+3] = message.getResult();               
+                serverResult[count+5] = message.getResult();               
                 count++;
                 serverResult[0] = (Integer)count;
                 resultMap.put(key, serverResult);
+                int needed = (Integer) serverResult[4];
+                enough = count >= size || (needed > 0 && count >= needed)
+                        || (needed == 0 && !(message.getResult() instanceof Exception));
                 }
             }
             catch(NullPointerException e){}
             catch(ArrayIndexOutOfBoundsException e){}            
-            if(count == size) {
+            if(enough) {
+               // later replies find the result not valid any more and are dropped
                sendReply(key, methodSignature);
                return;
             }             
         }
         if(message.getMessageType().equals("Request")){
-            invocationHandler.invokeMethod(m, protocol, methodSignature, args, sender, message);
-            Thread t = new Thread(invocationHandler);
-            t.start();
+            String cacheKey = null;
+            boolean replicate = false;
+            if(!methodSignature.equals("getView")) {
+                // a request forwarded by a member for Multicast semantics is
+                // remembered apart from the request the client sent directly,
+                // which the forwarding member is waiting on, but by the client
+                // and message number only, so that when the client sends it
+                // again through another member it is not executed again
+                cacheKey = (fromMember ? "group:" : "") + ReplyCache.key(message.getOriginalSender(), message.getMessageNumber());
+                Message cached = replyCache.begin(cacheKey);
+                if(cached == ReplyCache.PENDING) {
+                    if(DEBUG) {
+                        System.out.println("Dropping duplicate of request being executed: "+cacheKey);
+                    }
+                    if(fromMember) {
+                        proxy.requestApplied();
+                    }
+                    return;
+                }
+                if(cached != null) {
+                    if(fromMember) {
+                        proxy.requestApplied();
+                    }
+                    proxy.sendAnycast(sender, cached);
+                    return;
+                }
+                replicate = !fromMember && protocol.equals("Anycast") && m.isAnnotationPresent(ReplicateReply.class);
+                if(protocol.equals("Multicast") && !fromMember && size>1) {
+                    // only forwarded to the group, not queued behind the requests
+                    // of the client still executed here, as those of a slow member
+                    proxy.sendMulticast(message, proxy.getDelivery(methodSignature));
+                    return;
+                }
+            }
+            boolean applied = fromMember && !methodSignature.equals("getView");
+            ExternalInvocationHandler invocation = new ExternalInvocationHandler(this, proxy, server, m, protocol, methodSignature, args, sender, message, cacheKey, replicate, applied);
+            execute(invocation, cacheKey);
         }
      }
+    
+    private void execute(ExternalInvocationHandler invocation, String cacheKey) {
+        try {
+            workers.execute(invocation.getClient(), invocation);
+        }
+        catch(RejectedExecutionException e) {
+            replyCache.abort(cacheKey);
+            invocation.reject(e);
+        }
+    }
+    
+    /**Called by ServerSideProxy when its state version has changed, runs
+     * the ReadOnly requests which were waiting for it.
+     * 
+     * @param version state version of this member
+     */
+    public void stateVersionChanged(long version) {
+        readers.advance(version);
+    }
+    
+    /**Number of replies of the members after which the client of a Multicast
+     * method is answered, by the Multicast annotation of the method.
+     * 
+     * @param multicast annotation of the method
+     * @return number of replies, 0 for the first reply which is not an exception
+     */
+    private int getNeeded(Multicast multicast) {
+        if(multicast == null) {
+            return size;
+        }
+        switch(multicast.replies()) {
+            case MAJORITY:
+                return size/2+1;
+            case FIRST:
+                return 0;
+            case K:
+                return Math.max(1, Math.min(multicast.k(), size));
+            default:
+                return size;
+        }
+    }
+    
+    /**Called by ExternalInvocationHandler when it has sent the reply to a
+     * request. the reply is cached to answer the request if it is received
+     * again, and if replicate is set, for a ReplicateReply method, it is
+     * also sent to the other members, so that they answer the request from
+     * their caches when the client sends it to them after this server has
+     * failed.
+     * 
+     * @param cacheKey key of the request in the reply cache, null if it is not cached
+     * @param reply reply which was sent
+     * @param replicate whether to send the reply to the other members
+     */
+    public void replySent(String cacheKey, Message reply, boolean replicate) {
+        if(cacheKey == null) {
+            return;
+        }
+        replyCache.complete(cacheKey, reply);
+        if(replicate && proxy.getCurrentView().getView().size() > 1) {
+            Message cacheReply = new Message();
+            cacheReply.setMethodSignature("cacheReply");
+            cacheReply.setMessageType("Reply");
+            cacheReply.setResult(reply);
+            // no ordering with the other messages is needed, the reply only
+            // has to be there before the client gives up on this member
+            proxy.sendMulticast(cacheReply, Delivery.RELIABLE);
+        }
+    }
+    
+    /**Called by ServerSideProxy when another member has sent the reply to
+     * a request.
+     * 
+     * @param reply reply sent by the member
+     */
+    public void cacheReply(Message reply) {
+        replyCache.complete(ReplyCache.key(reply.getOriginalSender(), reply.getMessageNumber()), reply);
+    }
+    
     /**This is used to check that either the request is completed or not by 
      * ExternalInvoationTimer.
      * 
      * @param key for unique request
      * @return boolean - either valid or notvalid
      */
-    public boolean isCompleted(int key){
+    synchronized public boolean isCompleted(int key){
         Object[] serverResult = (Object[])resultMap.get(key);
         String validity = (String)serverResult[2];
         return validity.equals("NotValid");
@@ -108,11 +290,13 @@ public class ExternalGMIService implements InvocationHandler{
      * @param key
      * @param methodSignature
      */
-    public void sendReply(int key, String methodSignature){
+    synchronized public void sendReply(int key, String methodSignature){
         Object[] serverResult = (Object[])resultMap.get(key);
         Message reply = new Message();
         reply.setMethodSignature(methodSignature);
-        for(int i=3;i< serverResult.length; i++){
+        // only the results which are in, the others may still come
+        obj = "null";
+        for(int i=5;i< 5+(Integer)serverResult[0]; i++){
             obj=serverResult[i];
             if(obj instanceof Exception){
                 obj = "null";
@@ -125,20 +309,23 @@ public class ExternalGMIService implements InvocationHandler{
         }
         try {
             if(obj.equals("null")){
-                reply.setResult(serverResult[3]);
+                reply.setResult(serverResult[5]);
             }                  
         }
         catch(NullPointerException e){
-            reply.setResult(serverResult[3]);
+            reply.setResult(serverResult[5]);
         }
         reply.setMessageType("Reply");
+        reply.setMessageNumber((Integer)serverResult[3]);
         serverResult[2]=(String)"NotValid";
+        // the sender is the private group of the client, which is its original sender
+        replyCache.complete(ReplyCache.key((String)serverResult[1], (Integer)serverResult[3]), reply);
         if(DEBUG){
-	   System.out.println("sending reply result is: "+serverResult[3]+" to sender: "+serverResult[1]);
+	   System.out.println("sending reply result is: "+serverResult[5]+" to sender: "+serverResult[1]);
 	}
         proxy.sendAnycast((String)serverResult[1], reply);         
     }        
-    public void removeResult(int key){
+    synchronized public void removeResult(int key){
         resultMap.remove(key);
     }
 }
@@ -3,70 +3,130 @@ package gmi;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**This Object is used to handle the invocation on server application
  * on receiving the request from clients or servers for External Methods.
+ * one is created for every request and run by the worker pool of
+ * ExternalGMIService, it is not changed after it is created.
  *
  * @author Gurvinder Singh
  */
 public class ExternalInvocationHandler implements Runnable{
     
-    private ServerSideProxy proxy;
-    private Object server;
-    private Object result;
-    private String protocol, methodSignature, sender;
-    private Object[] args;
-    private Message message;
-    private Method method;    
+    private final ExternalGMIService service;
+    private final ServerSideProxy proxy;
+    private final Object server;
+    private final String protocol, methodSignature, sender;
+    private final Object[] args;
+    private final Message message;
+    private final Method method;    
+    // key of the request in the reply cache, and whether to replicate the reply
+    private final String cacheKey;
+    private final boolean replicate;
+    // whether the request was delivered to the group, it then counts in the
+    // state version of this member once it is executed
+    private final boolean applied;
     
-    public ExternalInvocationHandler(ServerSideProxy proxy, Object server){
+    public ExternalInvocationHandler(ExternalGMIService service, ServerSideProxy proxy, Object server, Method m, String protocol,String methodSignature, Object[] args, String sender, Message message, String cacheKey, boolean replicate, boolean applied){
+        this.service = service;
         this.proxy = proxy;  
         this.server = server;   
-    }    
-    
-    synchronized public void invokeMethod(Method m, String protocol,String methodSignature, Object[] args, String sender, Message message){
         method = m;
         this.protocol=protocol;
         this.methodSignature = methodSignature;
         this.args = args;
         this.sender = sender;
         this.message = message;                            
+        this.cacheKey = cacheKey;
+        this.replicate = replicate;
+        this.applied = applied;
+    }    
+    
+    /**
+     * @return client which the request comes from, whose requests are executed in order
+     */
+    public String getClient() {
+        return message.getOriginalSender();
     }
     
     public void run() {
-        final String orgsender = sender;
-        final String orgmethodSignature = methodSignature;
-        final Message orgMessage = message;
-        if(orgmethodSignature.equals("getView")){           
+        proxy.invocationStarted();
+        if(methodSignature.equals("getView")){           
             Message replyMessage = new Message();
-            replyMessage.setMethodSignature(orgmethodSignature);
+            replyMessage.setMethodSignature(methodSignature);
             replyMessage.setMessageType("Reply");
+            replyMessage.setMessageNumber(message.getMessageNumber());
             replyMessage.setResult(proxy.getCurrentView());
-            proxy.sendAnycast(orgsender,replyMessage);
+            proxy.sendAnycast(sender,replyMessage);
+            proxy.invocationFinished();
             return;
         }        
-        if(protocol.equals("Multicast") && !proxy.getCurrentView().getView().contains(orgsender) && proxy.getCurrentView().getView().size()>1){
-                proxy.sendMulticast(orgMessage); 
-                return;
-        }		
-        if(orgMessage.getMessageType().equals("Request")) {            
+        if(message.getMessageType().equals("Request")) {            
+                Object result = null;
                 try {
-                    result = method.invoke(server, args);                     
+                    result = proxy.getInvoker(method).invoke(server, args);                     
                 }
                 catch (IllegalAccessException e){
                     e.printStackTrace();
                 }
+                catch (IllegalArgumentException e){
+                    // the arguments do not fit the method, the client is told so
+                    result = e;
+                }
                 catch (InvocationTargetException e){
                     result = e.getTargetException();
                 }
-                Message reply = new Message();
-                reply.setMethodSignature(orgmethodSignature);
-                reply.setResult(result);
-                reply.setOriginalSender(orgMessage.getOriginalSender());
-                reply.setMessageType("Reply");
-                reply.setMessageNumber(orgMessage.getMessageNumber());
-                proxy.sendAnycast(orgsender, reply);            
+                if(result instanceof CompletableFuture) {
+                    // the server answers asynchronously, reply once it completes
+                    ((CompletableFuture<?>) result).whenComplete((value, failure) -> {
+                        if(failure instanceof CompletionException && failure.getCause() != null) {
+                            failure = failure.getCause();
+                        }
+                        sendReply(failure == null ? value : failure);
+                    });
+                    return;
+                }
+                sendReply(result);
+         }
+         else {
+             proxy.invocationFinished();
          }
     }
+    
+    /**Answers the request with the given exception instead of invoking the
+     * method, used when the request is not accepted by the worker pool.
+     * 
+     * @param e exception returned to the sender
+     */
+    public void reject(Exception e) {
+        if(applied) {
+            proxy.requestApplied();
+        }
+        if(!methodSignature.equals("getView")) {
+            proxy.sendAnycast(sender, createReply(e));
+        }
+    }
+    
+    private void sendReply(Object result) {
+        Message reply = createReply(result);
+        proxy.invocationFinished();
+        if(applied) {
+            proxy.requestApplied();
+        }
+        proxy.sendAnycast(sender, reply);            
+        service.replySent(cacheKey, reply, replicate);
+    }
+    
+    private Message createReply(Object result) {
+        Message reply = new Message();
+        reply.setMethodSignature(methodSignature);
+        reply.setResult(result);
+        reply.setOriginalSender(message.getOriginalSender());
+        reply.setMessageType("Reply");
+        reply.setMessageNumber(message.getMessageNumber());
+        return reply;
+    }
 
 }
@@ -4,11 +4,14 @@ package gmi;
 /**ExternalInvocationTimer is used to check if the result during
  * Multicast semantics is sent back or not. if not then it sends
  * the result which server application has till yet and sent one
- * of the result back to client.
+ * of the result back to client. It is scheduled on the TimerService.
  *
  * @author Gurvinder Singh
  */
-public class ExternalInvocationTimer extends Thread{
+public class ExternalInvocationTimer implements Runnable{
+
+    // time to wait for the results of all the members in milliseconds
+    public static final long DELAY = 2000;
 
     private ExternalGMIService egmi;
     private int key;
@@ -18,14 +21,7 @@ public class ExternalInvocationTimer extends Thread{
         this.key = key;
         this.methodSignature = methodSignature;
     }
-    @Override
     public void run(){
-        try {
-            Thread.sleep(2000);
-        }
-        catch (InterruptedException e) {
-            e.printStackTrace();
-        }         
         if(!egmi.isCompleted(key)){            
             egmi.sendReply(key, methodSignature);
         }   
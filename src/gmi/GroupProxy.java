@@ -2,12 +2,20 @@
 package gmi;
 
 import spread.*;
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.lang.reflect.Proxy;
+import gmi.protocols.Idempotent;
+import gmi.protocols.Timeout;
 
 /**GroupProxy Object implements the AdvancedMessageListener interface provided
  * by Spread java API to receive the message, it differentiate received message depending upon
@@ -25,17 +33,37 @@ import java.lang.reflect.Proxy;
 public class GroupProxy implements AdvancedMessageListener{
     private Object client;
     private SpreadConnection connection;
-    private String sender = null, server, groupname, methodSignature;   
-    private boolean grouptimeout, waitingView = true,recovery =  false, waitingProxy=true;    
-    private Object message = null, result;
+    private String groupname, methodSignature;   
+    private volatile boolean grouptimeout, waitingView = true, waitingProxy=true;    
+    private Object result;
+    private List<Message> recoveryMessages;
     private Class[] serverStub;
     private ExternalGMIListener external;
     private View view; 
-    private ArrayList<Boolean> ack;
-    private ArrayList<Boolean> resultAck;
-    private Random generator = new Random();
+    private AckWindow ackWindow;
+    private ConcurrentHashMap<Integer, Transmission> transmissions;
+    private RttEstimator ackRtt, resultRtt;
+    private ConcurrentHashMap<String, Long> lastHeard;
+    // latencies of the calls of idempotent methods, by method ID or signature
+    private ConcurrentHashMap<Object, LatencyTracker> latencies;
+    private ServerSelector selector = new ServerSelector();
+    // highest state version of a server seen in a message, see ReadOnly
+    private AtomicLong stateVersion = new AtomicLong();
+    // requests waiting to be sent together, by server
+    private HashMap<String, List<Message>> batches = new HashMap<String, List<Message>>();
+    private volatile int batchSize = 1;
+    private long batchLinger;
     private ClientInvocationHandler handler;
     private final boolean DEBUG = false;
+    // maximum number of messages which can be outstanding at the same time
+    private static final int ACK_WINDOW = 1024;
+    // bounds of the acknowledgement and result timeouts in milliseconds
+    private static final long MIN_ACK_TIMEOUT = 200, MAX_ACK_TIMEOUT = 5000;
+    private static final long MIN_RESULT_TIMEOUT = 500, MAX_RESULT_TIMEOUT = 60000;
+    // time in milliseconds to wait before a request refused by every member is sent again
+    private static final long OVERLOAD_BACKOFF = 50;
+    // time in milliseconds to wait for a free slot in the window before a view request is sent again
+    private static final long VIEW_RETRY = 100;
     
     public GroupProxy(Object client,String name, int port, String groupname, String address) {
                          
@@ -43,8 +71,13 @@ public class GroupProxy implements AdvancedMessageListener{
         this.groupname = groupname;
 	connection = new SpreadConnection();
 	view = new View();
-	ack = new ArrayList<Boolean>();
-        resultAck = new ArrayList<Boolean>();
+	ackWindow = new AckWindow(ACK_WINDOW);
+        transmissions = new ConcurrentHashMap<Integer, Transmission>();
+        lastHeard = new ConcurrentHashMap<String, Long>();
+        latencies = new ConcurrentHashMap<Object, LatencyTracker>();
+        ackRtt = new RttEstimator(TimeOut.DELAY, MIN_ACK_TIMEOUT, MAX_ACK_TIMEOUT);
+        resultRtt = new RttEstimator(ResultTimeout.DELAY, MIN_RESULT_TIMEOUT, MAX_RESULT_TIMEOUT);
+        recoveryMessages = Collections.synchronizedList(new ArrayList<Message>());
         try {
             //To connect to Spread Daemon Running on System and this connection is not
            //receiving Memebrship message due to last parameter which is set to false.
@@ -74,24 +107,55 @@ public class GroupProxy implements AdvancedMessageListener{
      */
     public void regularMessageReceived(SpreadMessage msg){
     
-       Object obj = null;
+       Message replyMessage = null;
+       String sender = null;
        try {
-           obj = msg.getObject();  
            sender = msg.getSender().toString();
+           replyMessage = Codecs.decode(msg.getData(), sender, groupname);
        }
-       catch (SpreadException e) {
+       catch (IOException e) {
            e.printStackTrace();
            System.exit(1);
        }       
-       getAck().set(((Message)obj).getMessageNumber(), new Boolean(true));
-       Message replyMessage = (Message) obj;
+       long now = System.currentTimeMillis();
+       lastHeard.put(sender, now);
+       long version = replyMessage.getStateVersion();
+       long seen = stateVersion.get();
+       while(version > seen && !stateVersion.compareAndSet(seen, version)) {
+           seen = stateVersion.get();
+       }
+       selector.report(sender, replyMessage.getInFlight(), replyMessage.getQueueDepth());
+       if(replyMessage.getMethodSignature().equals("Batch")) {
+           // acknowledgements or replies to the requests of a batch
+           for(Object reply : replyMessage.getArguments()) {
+               replyReceived((Message) reply, sender, now);
+           }
+           return;
+       }
+       replyReceived(replyMessage, sender, now);
+    }
+    
+    private void replyReceived(Message replyMessage, String sender, long now) {
+       int number = replyMessage.getMessageNumber();
+       Transmission transmission = transmissions.get(number);
+       if(transmission != null) {
+           transmission.acknowledged(sender, now);
+       }
+       if(replyMessage.getMethodSignature().equals("Overloaded")) {
+           redirect(number, sender);
+           return;
+       }
+       ackWindow.acknowledge(number);
        if(replyMessage.getMethodSignature().equals("Ack"))
            return;
-       getResultAck().set(((Message)obj).getMessageNumber(), new Boolean(true)); 
+       if(transmission != null) {
+           transmission.replied(sender, now);
+       }
+       finish(number);
        result = replyMessage.getResult();
        methodSignature = replyMessage.getMethodSignature();
        if(DEBUG) {
-           System.out.println("Message number in regular: "+((Message)obj).getMessageNumber()+" from "+sender);
+           System.out.println("Message number in regular: "+number+" from "+sender);
             System.out.println(methodSignature+ " from server "+sender+" result is "+result);
             System.out.println(result);
        }        
@@ -100,43 +164,155 @@ public class GroupProxy implements AdvancedMessageListener{
        }           
        else {
            if(methodSignature.equals("getServerStub")){       
+                handler.setMethodIds(replyMessage.getArguments());
                 setserverStub(result);
             }
-           else handler.getResult(result);
+           else handler.getResult(number, result);
        }    
     }
     
+    /**Allocates the next message number and its slot in the acknowledgement
+     * window. Every request must be numbered through this method before it is
+     * sent, the number is used to correlate the acknowledgement and the reply
+     * with the request. Waits if the window is full.
+     * 
+     * @return message number for a new request
+     */
+    public int nextMessageNumber() {
+       return ackWindow.acquire();
+    }
+    
     /**This method sends the anycast message to receiver which is one of the
-     * member of servergroup. it sets the message number for acknowledgement.
+     * member of servergroup. the message must already carry the message number
+     * obtained from nextMessageNumber().
      * 
      * @param receiver 
      * @param obj
      */
     public void sendMessagetoServer(String receiver, Message obj) {
-       ack.add(new Boolean(false));
-       resultAck.add(new Boolean(false));
-       obj.setMessageNumber(ack.size()-1);
+       sendMessagetoServer(receiver, obj, null);
+    }
+    
+    /**Sends the anycast message with timeouts given for the method instead
+     * of the ones measured for the server.
+     * 
+     * @param receiver 
+     * @param obj
+     * @param timeout timeouts of the invoked method, or null
+     */
+    public void sendMessagetoServer(String receiver, Message obj, Timeout timeout) {
+       sendMessagetoServer(receiver, obj, timeout, null);
+    }
+    
+    /**Sends the anycast message of a method which may be hedged: if the
+     * reply is late a copy is sent to another server, see Idempotent.
+     * 
+     * @param receiver 
+     * @param obj
+     * @param timeout timeouts of the invoked method, or null
+     * @param idempotent Idempotent annotation of the invoked method, or null
+     */
+    public void sendMessagetoServer(String receiver, Message obj, Timeout timeout, Idempotent idempotent) {
+       boolean first = !transmissions.containsKey(obj.getMessageNumber());
+       getTransmission(obj, timeout, idempotent);
        obj.setOriginalSender(getIdentifier());
        obj.setMessageType("Request");
        obj.setGroupName("null");
+       obj.setStateVersion(stateVersion.get());
+       if(first && batchSize > 1) {
+           addToBatch(receiver, obj);
+           return;
+       }
+       multicast(receiver, obj);
+       startTimers(new TimeOut(this, receiver, obj, false), receiver, obj);
+   }
+    
+   /**setBatching() makes the requests sent to the same server within the
+    * linger time be packed into one message, which saves the per message
+    * cost of Spread and of the server when many small calls are made at the
+    * same time. a batch is sent when it holds maxCalls requests or when the
+    * linger time since its first request has passed. retransmissions are
+    * always sent on their own. batching is off by default.
+    * 
+    * @param maxCalls maximum number of requests in one message, 1 turns
+    * batching off
+    * @param linger longest time in milliseconds a request waits for others
+    */
+   public void setBatching(int maxCalls, long linger) {
+       if(maxCalls < 1 || linger < 0) {
+           throw new IllegalArgumentException("maxCalls must be positive and linger not negative");
+       }
+       batchLinger = linger;
+       batchSize = maxCalls;
+   }
+    
+   private void addToBatch(final String receiver, Message obj) {
+       List<Message> full = null;
+       synchronized(batches) {
+           List<Message> batch = batches.get(receiver);
+           if(batch == null) {
+               final List<Message> created = new ArrayList<Message>();
+               batch = created;
+               batches.put(receiver, batch);
+               TimerService.schedule(new Runnable() {
+                   public void run() {
+                       sendBatch(receiver, created);
+                   }
+               }, batchLinger);
+           }
+           batch.add(obj);
+           if(batch.size() >= batchSize) {
+               full = batch;
+           }
+       }
+       if(full != null) {
+           sendBatch(receiver, full);
+       }
+   }
+    
+   /**Sends the requests of a batch together, unless it is sent already.
+    * 
+    * @param receiver server to which the requests are sent
+    * @param batch requests which are sent
+    */
+   private void sendBatch(String receiver, List<Message> batch) {
+       synchronized(batches) {
+           if(!batches.remove(receiver, batch)) {
+               return;
+           }
+       }
+       if(batch.size() == 1) {
+           multicast(receiver, batch.get(0));
+       }
+       else {
+           Message envelope = new Message();
+           envelope.setMethodSignature("Batch");
+           envelope.setMessageType("Request");
+           envelope.setGroupName("null");
+           envelope.setOriginalSender(getIdentifier());
+           envelope.setArguments(batch.toArray(new Message[batch.size()]));
+           multicast(receiver, envelope);
+       }
+       for(Message msg : batch) {
+           startTimers(new TimeOut(this, receiver, msg, false), receiver, msg);
+       }
+   }
+    
+   private void multicast(String receiver, Message obj) {
        SpreadMessage sm = new SpreadMessage();
         try {
             //Preparing Spread Message to sent to server.            
-            sm.setObject(obj);
+            sm.setData(Codecs.encode(obj, getIdentifier(), groupname));
             sm.addGroup(receiver);
             sm.setReliable();
         }
-        catch (SpreadException e) {
+        catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
         try {
             //Multicast the Message to Network as defined in spread.conf.
             connection.multicast(sm);            
-            TimeOut t = new TimeOut(this,receiver, sm, false);            
-            ResultTimeout tr = new ResultTimeout(this, sender, sm);
-            t.start();
-            tr.start();      
         }
         catch (SpreadException e) {
             e.printStackTrace();
@@ -144,6 +320,90 @@ public class GroupProxy implements AdvancedMessageListener{
         }          
    }
     
+   private Transmission getTransmission(Message msg, Timeout timeout, Idempotent idempotent) {
+       Transmission transmission = transmissions.get(msg.getMessageNumber());
+       if(transmission == null) {
+           transmission = new Transmission(msg, timeout, idempotent);
+           transmissions.put(msg.getMessageNumber(), transmission);
+       }
+       return transmission;
+   }
+    
+   /**Schedules the acknowledgement and result timeouts of a message which
+    * has just been sent, replacing the timeouts of an earlier transmission.
+    * 
+    * @param timeOut acknowledgement timeout for the message
+    * @param receiver server or group the message is sent to
+    * @param msg message which is sent
+    */
+   private void startTimers(TimeOut timeOut, String receiver, Message msg) {
+       getTransmission(msg, null, null).sent(receiver, timeOut);
+       if(ackWindow.isCompleted(msg.getMessageNumber())) {
+           // the reply arrived while the timers were being started
+           finish(msg.getMessageNumber());
+       }
+   }
+    
+   /**Frees the slot of a message which is completed and cancels its timeouts.
+    * 
+    * @param number message number
+    */
+   private void finish(int number) {
+       ackWindow.complete(number);
+       Transmission transmission = transmissions.remove(number);
+       if(transmission != null) {
+           transmission.finished();
+       }
+   }
+    
+   /**Sends a request again, to the same or to another server. The request
+    * keeps its message number, so the reply to any transmission completes the
+    * waiting call. Nothing is sent if the reply has arrived meanwhile.
+    * 
+    * @param receiver server to which the request is sent
+    * @param obj request which is retransmitted
+    */
+   private void resendMessagetoServer(String receiver, Message obj) {
+       int number = obj.getMessageNumber();
+       if(ackWindow.isCompleted(number)) {
+           return;
+       }
+       ackWindow.retransmit(number);
+       sendMessagetoServer(receiver, obj);
+   }
+    
+   /**Sends a request which the server refused because it is overloaded to
+    * another member at once. when every member has refused it, it is sent
+    * after OVERLOAD_BACKOFF milliseconds and the refusals are counted again.
+    * a refused hedged copy is dropped, the request is still executed by the
+    * server it was sent to.
+    * 
+    * @param number message number of the refused request
+    * @param from server which refused it
+    */
+   private void redirect(int number, final String from) {
+       Transmission transmission = transmissions.get(number);
+       if(transmission == null || !transmission.refused(from)) {
+           return;
+       }
+       final Message msg = transmission.msg;
+       List<String> others = new ArrayList<String>(view.getView());
+       others.remove(from);
+       final String receiver = others.isEmpty() ? from : selector.choose(others);
+       if(DEBUG) {
+           System.out.println("Server "+from+" overloaded, sending message "+number+" to "+receiver);
+       }
+       if(!transmission.roundRefused(others.size())) {
+           resendMessagetoServer(receiver, msg);
+           return;
+       }
+       TimerService.schedule(new Runnable() {
+           public void run() {
+               resendMessagetoServer(receiver, msg);
+           }
+       }, OVERLOAD_BACKOFF);
+   }
+    
    /**updateView() creates a message to send to group to get all the running servers
     * in the servergroup to get the service. 
     */
@@ -155,25 +415,34 @@ public class GroupProxy implements AdvancedMessageListener{
    } 
    
    /**this method multicast the message to get the update view of all the running
-    * servers at that time.
+    * servers at that time. it is called from the timer threads as well, so
+    * when the acknowledgement window is full it tries again later instead of
+    * waiting for a slot.
     * 
     * @param msg Message which needs to be multicasted to get the update view
     */
-   public void getUpdateView(Message msg) {
-        ack.add(new Boolean(false));
-	resultAck.add(new Boolean(false));
-        msg.setMessageNumber(ack.size()-1);
+   public void getUpdateView(final Message msg) {
+        int number = ackWindow.tryAcquire();
+        if(number < 0) {
+            TimerService.schedule(new Runnable() {
+                public void run() {
+                    getUpdateView(msg);
+                }
+            }, VIEW_RETRY);
+            return;
+        }
+        msg.setMessageNumber(number);
         msg.setGroupName("null");
         msg.setMessageType("Request");
         msg.setOriginalSender(getIdentifier());
         SpreadMessage sm = new SpreadMessage();
         try {
             //Preparing Spread Message to sent to server.            
-            sm.setObject(msg);
+            sm.setData(Codecs.encode(msg, getIdentifier(), groupname));
             sm.addGroup(groupname);
             sm.setReliable();
         }
-        catch (SpreadException e) {
+        catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
@@ -182,10 +451,7 @@ public class GroupProxy implements AdvancedMessageListener{
              * to get the update list of running servers.
              */
             connection.multicast(sm);        
-            TimeOut t = new TimeOut(this,groupname, sm, true);
-            ResultTimeout tr = new ResultTimeout(this, sender, sm);
-            t.start();
-            tr.start();         
+            startTimers(new TimeOut(this, groupname, msg, true), groupname, msg);
         }
         catch (SpreadException e) {
             e.printStackTrace();
@@ -207,35 +473,21 @@ public class GroupProxy implements AdvancedMessageListener{
             waitingView = false;
             this.notifyAll();
         }  
-        if(recovery) {
-            sender = getServerAddress();
-            if(message !=null ){
-                sendMessagetoServer(sender, (Message)message);
+        synchronized(recoveryMessages) {
+            for(Message message : recoveryMessages) {
+                resendMessagetoServer(getServerAddress(), message);
             }
-            recovery = false;
+            recoveryMessages.clear();
         }
    }
-   /**This method generate the random server to be choosen to request for service
-    * out of the list GroupProxy Object have of running members.
+   /**This method choose the server to request for service out of the list
+    * GroupProxy Object have of running members, preferring the less loaded
+    * of two randomly picked members.
     * 
     * @return the address of server which is choosed to request for service.
     */ 
    public String getServerAddress() {
-       int size = getView().size();
-       int pos = generator.nextInt();
-       int mod = size+1;
-       pos = pos%mod;
-       pos = Math.abs(pos);
-       if(pos>size-1) {
-           pos = 0;
-       }              
-       try {
-            server = getView().elementAt(pos);
-       }
-       catch (ArrayIndexOutOfBoundsException e){
-           e.printStackTrace();
-       }         
-        return server;
+       return selector.choose(getView());
     }
     /**This method used to get the Vector of group members out of View Object which 
      * is received.
@@ -268,6 +520,7 @@ public class GroupProxy implements AdvancedMessageListener{
        methodSignature = "getServerStub";
        Message getProxy = new Message();
        getProxy.setMethodSignature(methodSignature);
+       getProxy.setMessageNumber(nextMessageNumber());
        String destServer = getServerAddress();
        sendMessagetoServer(destServer, getProxy);
    }
@@ -291,7 +544,7 @@ public class GroupProxy implements AdvancedMessageListener{
            e.printStackTrace();
        }       
        ClassLoader cl = serverStub[0].getClassLoader();
-       external = (ExternalGMIListener) Proxy.newProxyInstance(cl, serverStub, handler);              
+       external = (ExternalGMIListener) Stubs.newStub(cl, serverStub, handler);              
         synchronized(this) {
             waitingProxy = false;
             this.notifyAll();
@@ -319,8 +572,21 @@ public class GroupProxy implements AdvancedMessageListener{
        }
        
    }
+   /**getAsyncServer() returns a stub implementing a companion async interface
+    * of the external interfaces of the server. Every method of the async
+    * interface returns a <code>CompletableFuture</code> and has the same name
+    * and parameter types as an external method, calling it sends the request
+    * and returns immediately, the future is completed when the reply arrives.
+    * 
+    * @param asyncInterface companion async interface
+    * @return stub Object implementing asyncInterface
+    */
+   public <T> T getAsyncServer(Class<T> asyncInterface){
+       getServer();
+       return asyncInterface.cast(Proxy.newProxyInstance(asyncInterface.getClassLoader(), new Class<?>[] { asyncInterface }, handler));
+   }
    /**This is called by TimeOut Object when it doesn't receive the acknowledgement
-    * for the message sent with in the specified time limit which is set to 1 sec.
+    * for the message sent with in the specified time limit which is derived from the measured round trip time of the server.
     * it removes the particular server on which it has time out and try tp send the
     * message again to next server from the list and if list is empty it try to get new
     * list of all the running servers. 
@@ -329,70 +595,268 @@ public class GroupProxy implements AdvancedMessageListener{
     * @param obj message which is sent to the server.
     */
    public void timeOut(String sender, Object obj) {
+       Transmission transmission = transmissions.get(((Message) obj).getMessageNumber());
+       if(transmission != null && transmission.isServerAlive()) {
+           // the server has sent something since the message was sent, so it
+           // is only slow to acknowledge, wait longer instead of failing over
+           transmission.restartAckTimer(new TimeOut(this, sender, (Message) obj, false));
+           return;
+       }
        view.removeServer(sender);
+       if(deferUntilView((Message) obj)) {
+           return;
+       }
        int size= getView().size();
        if(DEBUG) {
            System.out.println("Size is:: "+size);
        }
-       resultAck.set(resultAck.size()-1, new Boolean(true));
        if (size>0) {       
-          sender = getServerAddress();
-          sendMessagetoServer(sender, (Message) obj);   
+          String receiver = getServerAddress();
+          resendMessagetoServer(receiver, (Message) obj);   
        }    
        else {
-           message = obj;
-           recovery = true;
+           recoveryMessages.add((Message) obj);
            updateView();
        }
    }
    /***This is called by TimeOut Object when it doesn't receive the acknowledgement
-    * for the message sent with in the specified time limit which is set to 1 sec.
+    * for the message sent with in the specified time limit which is derived from the measured round trip time.
     * it try to get the updateView again and if it didn't receive the acknowledgment
     * again then it prints message and exit.
+    * 
+    * @param obj view request which is timed out.
     */
-   public void groupTimeOut() {
+   public void groupTimeOut(Object obj) {
     
         grouptimeout = true;
-	resultAck.set(resultAck.size()-1, new Boolean(true));
+	finish(((Message) obj).getMessageNumber());
         synchronized(this){
             this.notifyAll();
         }
-        recovery = true;
         waitingView = true;
         updateView();
-         try {
-             Thread.sleep(2000);
-         }
-         catch (InterruptedException e) {
-             e.printStackTrace();
-         }
-         if(grouptimeout) {
-         System.out.println("All Servers are Down.");
-         System.exit(1);   
-         }
+        TimerService.schedule(new Runnable() {
+            public void run() {
+                if(grouptimeout) {
+                    System.out.println("All Servers are Down.");
+                    System.exit(1);   
+                }
+            }
+        }, 2000);
    }    
    public void resultTimeout(Object obj){
+       if(deferUntilView((Message) obj)) {
+           return;
+       }
        int size= getView().size();       
        if (size>0) {       
-          sender = getServerAddress();
-          sendMessagetoServer(sender, (Message) obj);   
+          String receiver = getServerAddress();
+          resendMessagetoServer(receiver, (Message) obj);   
        }    
        else {
-           message = obj;
-           recovery = true;
+           recoveryMessages.add((Message) obj);
            updateView();
        }
    }
-   public ArrayList<Boolean> getResultAck() {
-       return resultAck;
+   /**Keeps a message which is to be sent again until the new view arrives,
+    * if a new view is requested already, instead of blocking the timer.
+    * 
+    * @param msg message which is to be sent again
+    * @return true if the message is kept
+    */
+   private boolean deferUntilView(Message msg) {
+       synchronized(recoveryMessages) {
+           if(waitingView) {
+               recoveryMessages.add(msg);
+               return true;
+           }
+           return false;
+       }
+   }
+   public boolean isAcknowledged(int messageNumber) {
+       return ackWindow.isAcknowledged(messageNumber);
    }
     
-   public ArrayList<Boolean> getAck() {
-       return ack;
+   public boolean isCompleted(int messageNumber) {
+       return ackWindow.isCompleted(messageNumber);
    }
 
    public String getIdentifier() {
        return connection.getPrivateGroup().toString();
    }
 
+   /**Sends a copy of a request which is still outstanding to another server,
+    * the first reply to arrive completes the call and the other is dropped.
+    * 
+    * @param transmission request which is hedged
+    */
+   private void hedge(Transmission transmission) {
+       Message msg = transmission.msg;
+       if(ackWindow.isCompleted(msg.getMessageNumber())) {
+           return;
+       }
+       String receiver = transmission.hedge(view.getView());
+       if(receiver != null) {
+           if(DEBUG) {
+               System.out.println("Hedging message "+msg.getMessageNumber()+" to "+receiver);
+           }
+           multicast(receiver, msg);
+       }
+   }
+
+   /**Transmission keeps the timeouts of an outstanding message and the
+    * time it was last sent, to measure the round trip time of the server.
+    */
+   private class Transmission {
+       private final Message msg;
+       private final Timeout timeout;
+       private final Idempotent idempotent;
+       private String server, hedgedTo;
+       private long sentAt;
+       private int sends = 0, refusals = 0;
+       private ScheduledFuture<?> ackTimer, resultTimer, hedgeTimer;
+
+       Transmission(Message msg, Timeout timeout, Idempotent idempotent) {
+           this.msg = msg;
+           this.timeout = timeout;
+           this.idempotent = idempotent;
+       }
+
+       synchronized void sent(String receiver, TimeOut timeOut) {
+           cancel();
+           if(server != null) {
+               selector.done(server);
+           }
+           if(hedgedTo != null) {
+               selector.done(hedgedTo);
+               hedgedTo = null;
+           }
+           selector.sent(receiver);
+           server = receiver;
+           sentAt = System.currentTimeMillis();
+           sends++;
+           long ackDelay = timeout != null && timeout.ack() > 0 ? timeout.ack() : ackRtt.getTimeout(receiver, sends-1);
+           long resultDelay = timeout != null && timeout.result() > 0 ? timeout.result() : resultRtt.getTimeout(receiver, sends-1);
+           ackTimer = TimerService.schedule(timeOut, ackDelay);
+           resultTimer = TimerService.schedule(new ResultTimeout(GroupProxy.this, msg), resultDelay);
+           if(idempotent != null && sends == 1) {
+               long hedgeDelay = getLatencies().getPercentile(idempotent.percentile());
+               if(hedgeDelay >= 0 && hedgeDelay < resultDelay) {
+                   hedgeTimer = TimerService.schedule(new Runnable() {
+                       public void run() {
+                           GroupProxy.this.hedge(Transmission.this);
+                       }
+                   }, hedgeDelay);
+               }
+           }
+       }
+
+       /**Picks the server to which a copy of the message is sent.
+        * 
+        * @param members servers in the current view
+        * @return server other than the one the message is sent to, or null
+        */
+       synchronized String hedge(List<String> members) {
+           if(server == null || hedgedTo != null) {
+               return null;
+           }
+           List<String> others = new ArrayList<String>(members);
+           others.remove(server);
+           if(others.isEmpty()) {
+               return null;
+           }
+           hedgedTo = selector.choose(others);
+           selector.sent(hedgedTo);
+           return hedgedTo;
+       }
+
+       LatencyTracker getLatencies() {
+           Object method = msg.getMethodId() >= 0 ? (Object) msg.getMethodId() : msg.getMethodSignature();
+           LatencyTracker tracker = latencies.get(method);
+           if(tracker == null) {
+               latencies.putIfAbsent(method, new LatencyTracker());
+               tracker = latencies.get(method);
+           }
+           return tracker;
+       }
+
+       /**
+        * @param sender server which refused the message
+        * @return true if it is the server the message is sent to
+        */
+       synchronized boolean refused(String sender) {
+           if(!sender.equals(server)) {
+               return false;
+           }
+           refusals++;
+           return true;
+       }
+
+       /**
+        * @param others number of other members the message can be sent to
+        * @return true if every member has refused the message since the last
+        * backoff, the refusals are then counted again from zero
+        */
+       synchronized boolean roundRefused(int others) {
+           if(refusals <= others) {
+               return false;
+           }
+           refusals = 0;
+           return true;
+       }
+
+       synchronized void restartAckTimer(TimeOut timeOut) {
+           TimerService.cancel(ackTimer);
+           long ackDelay = timeout != null && timeout.ack() > 0 ? timeout.ack() : ackRtt.getTimeout(server, sends);
+           ackTimer = TimerService.schedule(timeOut, ackDelay);
+       }
+
+       /**
+        * @return true if the server has been heard from since the message was sent
+        */
+       synchronized boolean isServerAlive() {
+           Long heard = lastHeard.get(server);
+           return heard != null && heard.longValue() >= sentAt;
+       }
+
+       synchronized void acknowledged(String sender, long now) {
+           // the Ack of the server a copy was hedged to says nothing about this one
+           if(sender.equals(server) && ackTimer != null && !ackTimer.isDone()) {
+               TimerService.cancel(ackTimer);
+               // Karn: a retransmitted or hedged message gives no usable sample
+               if(sends == 1) {
+                   ackRtt.sample(server, now - sentAt);
+               }
+           }
+       }
+
+       synchronized void replied(String sender, long now) {
+           if(sends == 1 && sender.equals(server)) {
+               resultRtt.sample(server, now - sentAt);
+           }
+           if(idempotent != null && sends == 1) {
+               // the latency seen by the caller, whichever copy replied
+               getLatencies().sample(now - sentAt);
+           }
+       }
+
+       synchronized void finished() {
+           cancel();
+           if(server != null) {
+               selector.done(server);
+               server = null;
+           }
+           if(hedgedTo != null) {
+               selector.done(hedgedTo);
+               hedgedTo = null;
+           }
+       }
+
+       synchronized void cancel() {
+           TimerService.cancel(ackTimer);
+           TimerService.cancel(resultTimer);
+           TimerService.cancel(hedgeTimer);
+       }
+   }
+
 }
@@ -4,27 +4,43 @@ package gmi;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
+import gmi.protocols.Reduce;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** InternalGMIService handles the method invocation which are internal to server groups
  * these method are invoked by all the running members of group and return result
  * is the array of Objects of size running members at the time of invocation.
+ * every invocation gets its own call number, carried by the request and the
+ * replies, so any number of threads can have internal invocations
+ * outstanding at the same time. the results of a method annotated with
+ * Reduce are reduced to one value as they arrive.
  * @author Gurvinder Singh
  */
 
 public class InternalGMIService implements InvocationHandler {
 
+  // time in milliseconds to wait for the replies of all the members
+  public static final long DELAY = 1000;
   private Object server;
   private ServerSideProxy serverproxy;
-  private Object[] serverresult;
   private Object reply;
-  private int serverCount=0, size;
-  private boolean waitingReply = true, timeExpired = false;
-  private long startTime;
+  private AtomicInteger callNumber = new AtomicInteger();
+  // invocations waiting for replies, by call number
+  private ConcurrentHashMap<Integer, PendingCall> pendingCalls = new ConcurrentHashMap<Integer, PendingCall>();
+  // internal methods by name and parameter types, for the async methods
+  private HashMap<String, Method> asyncTable = new HashMap<String, Method>();
   private final boolean DEBUG = false;
   
     public InternalGMIService(ServerSideProxy proxy, Object server)  {
         serverproxy = proxy;
         this.server = server;
+        for(Method m : proxy.getMethodTable("IGMI")) {
+            asyncTable.put(ClientInvocationHandler.getParameterDescriptor(m), m);
+        }
     }
     
     /**
@@ -35,6 +51,10 @@ public class InternalGMIService implements InvocationHandler {
      * it wait for time which is set to 1 sec now, if it receive the reply with in this time then 
      * it sends the reply back to the server otherwise it says time expire and sends the result which
      * it has by that time to the server application who invoked the method. 
+     * Methods of an async stub, which return a <code>CompletableFuture</code>, do not
+     * wait, the future is completed with the results instead. the result of
+     * a method annotated with Reduce is the reduced value, returned as soon as
+     * it is decided.
      * @param proxy Internal Proxy Object
      * @param m Method which is requested to be invoked
      * @param args Arguments required to pass to method
@@ -43,37 +63,55 @@ public class InternalGMIService implements InvocationHandler {
      */
     public Object invoke(Object proxy, Method m, Object[] args)
            throws Throwable {    
-    size = serverproxy.getCurrentView().getView().size();
+    if(m.getReturnType() == CompletableFuture.class) {
+        Method internal = asyncTable.get(ClientInvocationHandler.getParameterDescriptor(m));
+        if(internal == null) {
+            throw new Error("Method \""+m.getName()+"\" is not defined.");
+        }
+        return call(internal, args);
+    }
+    return call(m, args).join();
+    }
+    
+    /**
+     * Multicasts the request for an internal method in the group.
+     * @param m internal method to invoke
+     * @param args Arguments required to pass to method
+     * @return future completed with the array of the results of the members,
+     * or with the results which are in when DELAY has passed, or with the
+     * reduced value if the method is annotated with Reduce
+     */
+    public CompletableFuture<Object> call(Method m, Object[] args) {
+    int size = serverproxy.getCurrentView().getView().size();
     if(DEBUG) {
         System.out.println("Server: Invoking " + m.getName());
         System.out.println("Size is: "+size);
     }
-    serverresult = new Object[size];
+    final int number = callNumber.incrementAndGet();
+    Reduce reduce = m.getAnnotation(Reduce.class);
+    PendingCall call = new PendingCall(size, reduce == null ? null : new Reducer(reduce));
+    pendingCalls.put(number, call);
     String signature = serverproxy.getMethodSignature(m);
     Message message = new Message();
     message.setMethodSignature(signature);
     message.setArguments(args);
     message.setMessageType("Request");
-    message.setMessageNumber(0);
-    serverproxy.sendMulticast(message);
-        synchronized(this){
-            startTime = System.currentTimeMillis();
-            while(waitingReply){
-                try {                
-                    this.wait(1000);
-                    if(System.currentTimeMillis()-startTime>1000)
-                       timeExpired = true;                            
-                    if(timeExpired)
-                        waitingReply = false;
-                }    
-                catch(InterruptedException e){
-                    e.printStackTrace();
-                }
-            }
-            waitingReply = true;
-            serverCount = 0;
-            return serverresult;         
-        }       
+    message.setMessageNumber(number);
+    call.timer = TimerService.schedule(new Runnable() {
+        public void run() {
+            complete(number);
+        }
+    }, DELAY);
+    serverproxy.sendMulticast(message, serverproxy.getDelivery(signature));
+    return call.future;
+    }
+    
+    private void complete(int number) {
+        PendingCall call = pendingCalls.remove(number);
+        if(call != null) {
+            TimerService.cancel(call.timer);
+            call.future.complete(call.getResult());
+        }
     }
     
     /**
@@ -87,17 +125,18 @@ public class InternalGMIService implements InvocationHandler {
      * @param signature Method signature which is invoked
      * @param messagetype it is either "Request" or "Reply", if it is "Request"
      * method is invoked and result is sent back to sender and if it is "Reply"
-     * then result is set in the serverResult array.
+     * then result is set in the results of the call.
+     * @param messageNumber call number of the invocation
      * 
      * After it receives the result from all of the members in the group and
-     * then it notify the Blocking request for reply and sends back the result to 
+     * then it completes the call and sends back the result to 
      * application who requested to invoke method.
      */
     
-    public void invokeMethod (Method m, String internalSender, Object[] args, Object result, String signature, String messagetype) {        
+    public void invokeMethod (Method m, String internalSender, Object[] args, Object result, String signature, String messagetype, int messageNumber) {        
         if(messagetype.equals("Request")){
             try {
-               reply = m.invoke(server, args);
+               reply = serverproxy.getInvoker(m).invoke(server, args);
                if(DEBUG) {
                    System.out.println(m.getName()+" Invoked igmi"+" result is "+reply);
                }
@@ -108,26 +147,57 @@ public class InternalGMIService implements InvocationHandler {
             catch (InvocationTargetException e){
                 reply = e.getTargetException();
             }
+            serverproxy.requestApplied();
             Message message = new Message();
             message.setMethodSignature(signature);
             message.setArguments(args);
             message.setMessageType("Reply");
+            message.setMessageNumber(messageNumber);
             message.setResult(reply);            
             serverproxy.sendAnycast(internalSender,message);
         }
         else{
-            try{
-                 serverresult[serverCount] = result;
-            }
-            catch(ArrayIndexOutOfBoundsException e){ }           
-            serverCount++;
-            if(serverCount==size){
-                synchronized(this){
-                    waitingReply = false;
-                    serverCount =0;
-                    notifyAll();
+            PendingCall call = pendingCalls.get(messageNumber);
+            if(call == null) {
+                if(DEBUG) {
+                    System.out.println("Dropping late reply for call: "+messageNumber);
                 }
-            }            
+                return;
+            }
+            if(call.add(result)) {
+                complete(messageNumber);
+            }
         }         
     }    
+    
+    /**Results of an internal invocation collected so far. */
+    private static class PendingCall {
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        final Object[] results;
+        final Reducer reducer;
+        int count = 0;
+        ScheduledFuture<?> timer;
+        
+        PendingCall(int size, Reducer reducer) {
+            results = new Object[size];
+            this.reducer = reducer;
+        }
+        
+        /**
+         * @return true if the results of all the members are in, or the
+         * reduced value is decided
+         */
+        synchronized boolean add(Object result) {
+            if(count < results.length) {
+                results[count] = result;
+            }
+            count++;
+            boolean decided = reducer != null && reducer.add(result);
+            return decided || count >= results.length;
+        }
+        
+        synchronized Object getResult() {
+            return reducer != null ? reducer.getValue() : results.clone();
+        }
+    }
 }
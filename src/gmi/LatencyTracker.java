@@ -0,0 +1,44 @@
+package gmi;
+
+import java.util.Arrays;
+
+/**LatencyTracker keeps the most recent latencies observed for the calls of
+ * a method and gives their percentiles. It is used by GroupProxy to decide
+ * when a request of an idempotent method is hedged.
+ */
+public class LatencyTracker {
+
+    // number of latencies kept
+    private static final int SIZE = 256;
+    // number of latencies needed before a percentile is given
+    private static final int MIN_SAMPLES = 20;
+    private final long[] samples = new long[SIZE];
+    private int count = 0, next = 0;
+
+    public synchronized void sample(long latency) {
+        samples[next] = latency;
+        next = (next + 1) % SIZE;
+        if(count < SIZE) {
+            count++;
+        }
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return latency in milliseconds below which the given percentage of
+     * the recent latencies lie, or -1 if too few have been observed yet
+     */
+    public long getPercentile(double percentile) {
+        long[] sorted;
+        synchronized(this) {
+            if(count < MIN_SAMPLES) {
+                return -1;
+            }
+            sorted = new long[count];
+            System.arraycopy(samples, 0, sorted, 0, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
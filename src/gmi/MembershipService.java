@@ -22,16 +22,17 @@ import java.util.ArrayList;
  * @author Gurvinder Singh
  */
 
-public class MembershipService extends Thread{
+public class MembershipService {
 
     private ServerSideProxy proxy;
     private Method[] membershipChangeMethod;
     private View view;
-    private SpreadMessage msg;
     private Object server, result;
     private Object args[];    
     private long startTime;
     private boolean firstTime = true;
+    // the view is not given to the listener yet, it waits for the global state
+    private boolean pending = false;
     private final boolean DEBUG = false;
     
     public MembershipService(ServerSideProxy proxy, Object server) {
@@ -42,21 +43,15 @@ public class MembershipService extends Thread{
         startTime = System.currentTimeMillis();        
     }
     
-    /**
-     * Memebership Change message is set in this object by serversideproxy object.
+    /**serversideproxy queues every membership message on its event loop and
+     * viewChanged() is executed there for one message after the other, according
+     * to cause of triggering of message it maintains the view of all the running
+     * members of the gorup and invoke Membershipchange method declared in
+     * MembershipListener Interface.
+     * 
      * @param msg Membership change message
      */
-    public void getMessage(SpreadMessage msg){
-        this.msg = msg;
-    }
-    
-    /**serversideproxy create new thread on receiving membership message and  
-     * run() method is executed by newly created thread according to cause of triggering 
-     * of message it maintains the view of all the running members of the gorup
-     * and invoke Membershipchange method declared in MembershipListener Interface.
-     */
-    @Override
-    public void run(){    
+    public void viewChanged(SpreadMessage msg){    
         
         try{
             MembershipInfo info = msg.getMembershipInfo();
@@ -116,6 +111,9 @@ public class MembershipService extends Thread{
             if(!(firstTime && proxy.getMethodTable("Merging").length>0) || getCurrentView().getView().size()==1) {
                 invokeMethod();
             } 
+            else {
+                pending = true;
+            }
             if(firstTime) {
                 proxy.setLeader(proxy.getIdentifier());
                 firstTime = false;
@@ -154,6 +152,13 @@ public class MembershipService extends Thread{
         argv.add(arg);
         args = argv.toArray();
     }
+    /**
+     * @return true if the current view was not given to the listener yet,
+     * because the member waits for the global state
+     */
+    public boolean isPending() {
+        return pending;
+    }
     public void setView(View view) {
         this.view = view;
     }
@@ -163,10 +168,11 @@ public class MembershipService extends Thread{
      */
     
     public void invokeMethod(){
+        pending = false;
         setArgument(getCurrentView());       
        for(Method m : membershipChangeMethod){
           try {
-              result = m.invoke(server, args);
+              result = proxy.getInvoker(m).invoke(server, args);
           }
           catch(InvocationTargetException e){
               result =e;
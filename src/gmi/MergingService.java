@@ -1,6 +1,8 @@
 
 package gmi;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
@@ -9,20 +11,31 @@ import java.util.ArrayList;
  * invokes the getGlobalState() method to get the global state of the group
  * and multicast global state to group only newly created member or other
  * members during partion merging update their global state by calling 
- * putGlobalState() method which actually invoke the method putState()
- * declared in MergingListener interface.
+ * putStateChunk() which at the last chunk invokes the method putState()
+ * declared in MergingListener interface. the global state is serialized
+ * into chunks of at most CHUNK_SIZE bytes with a checksum each as it is
+ * sent, which are put as they arrive by a StreamingMergingListener and read
+ * into one state as they arrive otherwise. a server which implements
+ * DeltaMergingListener is sent only the changes since the version of its
+ * state it advertises in a putChanges message, see advertiseState(), or its
+ * whole state in chunks when the leader does not have them.
  * 
  * @author Gurvinder Singh
  */
 
-public class MergingService extends Thread{
+public class MergingService {
     
     private Object server, result;
     private ServerSideProxy proxy;  
     private Method[] mergingMethod;
     private Object[] args;
-    private String sender, cause;
     private final boolean DEBUG = false;
+    // most bytes of the state sent in one message
+    public static final int CHUNK_SIZE = 32 * 1024;
+    // number of the last transfer sent by this member
+    private int transfers = 0;
+    // state being received, null if none, only used on the event loop
+    private StateTransfer transfer;
 
     public MergingService(ServerSideProxy proxy, Object server) {        
         this.proxy = proxy;
@@ -40,10 +53,32 @@ public class MergingService extends Thread{
         if(mergingMethod.length==0){
             return;
         }
+        int id = ++transfers;
+        if(server instanceof StreamingMergingListener) {
+            StreamingMergingListener listener = (StreamingMergingListener) server;
+            try {
+                byte[] chunk = listener.getStateChunk(0);
+                if(chunk == null) {
+                    // an empty state, still sent so the members synchronize their view
+                    sendChunk(id, 0, new byte[0], true, null, cause);
+                    return;
+                }
+                // one chunk ahead to know which is the last
+                for(int index = 0; chunk != null; index++) {
+                    byte[] next = listener.getStateChunk(index+1);
+                    sendChunk(id, index, chunk, next == null, null, cause);
+                    chunk = next;
+                }
+            }
+            catch(RuntimeException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         for(int i=0; i<mergingMethod.length; i++){
             if(mergingMethod[i].getName().equals("getState")){
                 try{                    
-                    result = mergingMethod[i].invoke(server);
+                    result = proxy.getInvoker(mergingMethod[i]).invoke(server, null);
                     if(DEBUG) {
                         System.out.println("result is: "+result+" invoked in: "+proxy.getIdentifier());
                     }
@@ -56,57 +91,269 @@ public class MergingService extends Thread{
                 }
             }                                        
         }
-        Message globalState = new Message();
-        globalState.setMethodSignature("putState");
-        globalState.setResult(result);
-	globalState.setMessageType(cause);
-	globalState.setOriginalSender(proxy.getIdentifier());
-        proxy.sendMulticast(globalState);       
+        sendState(result, id, null, cause);
     }
     
-    public void putGlobalState(Object state, String sender, String cause){        
-        if(!proxy.getIdentifier().equals(sender)) {
-            setArgument(state);            
-            if(DEBUG){
-                System.out.println("Result is: "+state);
+    /**Serializes the state into chunks which are sent as they fill, so the
+     * bytes of the whole state are never held by the leader.
+     * 
+     * @param state state to send
+     * @param id number of the transfer
+     * @param receiver member to send it to, null for the whole group
+     * @param cause "Join" or "Network"
+     */
+    private void sendState(Object state, final int id, final String receiver, final String cause) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new ChunkOutputStream(CHUNK_SIZE) {
+                protected void chunk(int index, byte[] chunk, boolean last) {
+                    sendChunk(id, index, chunk, last, receiver, cause);
+                }
+            });
+            out.writeObject(state);
+            out.close();
+        }
+        catch(IOException e) {
+            // the members break the transfer off at the next one
+            e.printStackTrace();
+        }
+    }
+    
+    private void sendChunk(int id, int index, byte[] chunk, boolean last, String receiver, String cause) {
+        Message stateChunk = new Message();
+        stateChunk.setMethodSignature("stateChunk");
+        stateChunk.setResult(chunk);
+        // transfer, number of the chunk, whether it is the last and its checksum
+        stateChunk.setArguments(new Object[] { id, index, last, StateTransfer.checksum(chunk) });
+	stateChunk.setMessageType(cause);
+	stateChunk.setOriginalSender(proxy.getIdentifier());
+        stateChunk.setStateVersion(proxy.getStateVersion());
+        if(receiver == null) {
+            proxy.sendMulticast(stateChunk);
+        }
+        else {
+            proxy.sendFifo(receiver, stateChunk);
+        }
+    }
+    
+    /**When a stateChunk message is received by serversideproxy it queues it
+     * on its event loop, after the membership changes received before it.
+     * the chunks of a transfer must arrive in order with the right
+     * checksums, otherwise the transfer is broken off and the state is not
+     * put until the next one. whether the state is put is decided at the
+     * first chunk, by acceptsState().
+     * 
+     * @param sender leader which sent the chunk
+     * @param chunk chunk of the state
+     * @param header transfer, number of the chunk, whether it is the last and its checksum
+     * @param cause "Join" or "Network"
+     * @param version state version of the leader when it sent the chunk
+     */
+    public void putStateChunk(String sender, byte[] chunk, Object[] header, String cause, long version) {
+        int id = (Integer) header[0];
+        int index = (Integer) header[1];
+        boolean last = (Boolean) header[2];
+        if(index == 0) {
+            if(transfer != null) {
+                transfer.abort();
+            }
+            transfer = new StateTransfer(sender, id, acceptsState(sender, cause), server instanceof StreamingMergingListener);
+        }
+        else if(transfer == null || !transfer.follows(sender, id, index)) {
+            if(transfer != null) {
+                System.out.println("State chunk "+index+" from "+sender+" out of order, state transfer broken off");
+                transfer.abort();
             }
+            transfer = null;
+            return;
+        }
+        if(!transfer.add(chunk, ((Number) header[3]).longValue())) {
+            System.out.println("Checksum of state chunk "+index+" from "+sender+" does not match, state transfer broken off");
+            transfer.abort();
+            transfer = null;
+            return;
+        }
+        StateTransfer current = transfer;
+        if(last) {
+            transfer = null;
+        }
+        if(!current.isPut()) {
+            return;
+        }
+        if(current.isStreaming()) {
+            try {
+                ((StreamingMergingListener) server).putStateChunk(chunk, index, last);
+            }
+            catch(RuntimeException e) {
+                e.printStackTrace();
+                transfer = null;
+                return;
+            }
+            if(last) {
+                stateSynchronized(version);
+            }
+            return;
+        }
+        if(last) {
+            Object state;
+            try {
+                state = current.getState();
+            }
+            catch(IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            catch(ClassNotFoundException e) {
+                e.printStackTrace();
+                return;
+            }
+            putState(state, version);
         }
-	this.sender = sender;
-        this.cause = cause;	
     }
-    /**When the putState message is received by serversideproxy it create a 
-     * new thread to handle the synchronization of global state and run() is executed by 
-     * newly created thread to handle the method invocation for putting new state. 
+    
+    /**Invoked in every member of a server which implements DeltaMergingListener,
+     * instead of getGlobalState() in the leader, multicasts the version of the
+     * state of this member to the group.
+     * 
+     * @param cause "Join" or "Network"
      */
-    @Override
-    public void run(){
-	try{
-            if(!proxy.getIdentifier().equals(sender) && ((System.currentTimeMillis()-proxy.getStartTime())<1000 || cause.equals("Network"))){
-                for(int i=0; i<mergingMethod.length; i++){
-                    if(mergingMethod[i].getName().equals("putState")){
-                        try{                            
-                            result = mergingMethod[i].invoke(server, args);
-                            if(DEBUG) {
-                                System.out.println("put global state result is: "+result);
-                            }
-                        }
-                        catch(IllegalAccessException e){
-                            e.printStackTrace();
-                        }
-                        catch(InvocationTargetException e){                                               
-                            result = e;
-                        }
-                    }                                        
-                }                  
-                if(DEBUG) {
-                    System.out.println("putting new state");
-                }
-                proxy.synchronizedView();  
-            }      
+    public void advertiseState(String cause) {
+        Message advert = new Message();
+        advert.setMethodSignature("advertState");
+        try {
+            advert.setResult(((DeltaMergingListener) server).getStateVersion());
+        }
+        catch(RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+        advert.setMessageType(cause);
+        advert.setOriginalSender(proxy.getIdentifier());
+        proxy.sendMulticast(advert);
+    }
+    
+    /**Invoked in the leader when a member has advertised the version of its
+     * state, sends the member the changes since that version, or the whole
+     * state if the leader does not have them.
+     * 
+     * @param member member which advertised its state
+     * @param version version of the state of the member
+     * @param cause "Join" or "Network"
+     */
+    public void stateAdvertised(String member, long version, String cause) {
+        DeltaMergingListener listener = (DeltaMergingListener) server;
+        Object changes = null;
+        Object state = null;
+        try {
+            changes = listener.getChanges(version);
+            if(changes == null) {
+                state = listener.getState();
+            }
         }
-        catch(NullPointerException e){
+        catch(RuntimeException e) {
+            e.printStackTrace();
             return;
-        }                   
+        }
+        if(DEBUG) {
+            System.out.println("Sending "+(changes != null ? "changes since "+version : "whole state")+" to "+member);
+        }
+        if(changes == null) {
+            // in chunks like the global state, only to this member
+            sendState(state, ++transfers, member, cause);
+            return;
+        }
+        Message delta = new Message();
+        delta.setMethodSignature("putChanges");
+        delta.setResult(changes);
+        // the member which puts the changes and the version it has
+        delta.setArguments(new Object[] { member, version });
+	delta.setMessageType(cause);
+	delta.setOriginalSender(proxy.getIdentifier());
+        delta.setStateVersion(proxy.getStateVersion());
+        proxy.sendAnycast(member, delta);
+    }
+    
+    /**Puts the changes the leader has sent for one member of a server which
+     * implements DeltaMergingListener, if the member accepts a state from the
+     * leader, see acceptsState().
+     * 
+     * @param changes changes since the version the member advertised
+     * @param sender leader which sent the changes
+     * @param header member which puts the changes and its version
+     * @param cause "Join" or "Network"
+     * @param version state version of the leader when it sent the changes
+     */
+    public void putChanges(Object changes, String sender, Object[] header, String cause, long version) {
+        if(!proxy.getIdentifier().equals(header[0]) || !acceptsState(sender, cause)) {
+            return;
+        }
+        DeltaMergingListener listener = (DeltaMergingListener) server;
+        try {
+            if(listener.getStateVersion() != ((Number) header[1]).longValue()) {
+                // changed since it advertised, ask again for the rest
+                advertiseState(cause);
+                return;
+            }
+            listener.putChanges(changes);
+        }
+        catch(RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+        stateSynchronized(version);
+    }
+    
+    private void stateSynchronized(long version) {
+        proxy.syncStateVersion(version);
+        // the members which were in the view before have been given it
+        // already when a DeltaMergingListener is brought up to date
+        if(!(server instanceof DeltaMergingListener) || proxy.isViewPending()) {
+            proxy.synchronizedView();
+        }
+    }
+    
+    private boolean acceptsState(String sender, String cause) {
+        return acceptsState(proxy.getIdentifier(), sender, cause, System.currentTimeMillis()-proxy.getStartTime());
+    }
+    
+    /**A member puts the state of the leader when it has just started or the
+     * partitions have merged, a member which has been running is ahead of
+     * the state a joining member causes the leader to send.
+     * 
+     * @param member member which receives the state
+     * @param sender leader which sent the state
+     * @param cause "Join" or "Network"
+     * @param running milliseconds since the member started
+     * @return true if the member puts the state
+     */
+    public static boolean acceptsState(String member, String sender, String cause, long running) {
+        return !member.equals(sender) && (running<1000 || "Network".equals(cause));
+    }
+    
+    private void putState(Object state, long version) {
+        setArgument(state);            
+        if(DEBUG){
+            System.out.println("Result is: "+state);
+        }
+        for(int i=0; i<mergingMethod.length; i++){
+            if(mergingMethod[i].getName().equals("putState")){
+                try{                            
+                    result = proxy.getInvoker(mergingMethod[i]).invoke(server, args);
+                    if(DEBUG) {
+                        System.out.println("put global state result is: "+result);
+                    }
+                }
+                catch(IllegalAccessException e){
+                    e.printStackTrace();
+                }
+                catch(InvocationTargetException e){                                               
+                    result = e;
+                }
+            }                                        
+        }                  
+        if(DEBUG) {
+            System.out.println("putting new state");
+        }
+        stateSynchronized(version);
     }
     public void setArgument(Object arg){
        ArrayList<Object> argv = new ArrayList<Object>();
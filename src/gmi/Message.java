@@ -23,6 +23,13 @@ public class Message implements Serializable {
     private Object result;
     //args[] is the argumets which are needed to be passed to method for it's invocation.
     private Object[] args;
+    //load of the server which sends the message, used by clients to choose a server.
+    private int inFlight, queueDepth;
+    //methodId is the ID of the external method to invoke, if the client knows it, otherwise -1.
+    private int methodId = -1;
+    //stateVersion is the number of group requests delivered to the server which
+    //sends a reply, in a request the highest version the client has seen.
+    private long stateVersion;
     
     public void setMessageNumber(int num){
         messagenumber = num;
@@ -42,6 +49,12 @@ public class Message implements Serializable {
     public String getMethodSignature(){
         return methodSignature;
     }
+    public void setMethodId(int id){
+        methodId = id;
+    }
+    public int getMethodId(){
+        return methodId;
+    }
     public void setMessageType(String type) {
         messageType = type;
     }
@@ -66,5 +79,21 @@ public class Message implements Serializable {
     public String getGroupName(){
         return groupname;
     }    
+    public void setLoad(int inFlight, int queueDepth) {
+        this.inFlight = inFlight;
+        this.queueDepth = queueDepth;
+    }
+    public int getInFlight() {
+        return inFlight;
+    }
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+    public void setStateVersion(long version) {
+        stateVersion = version;
+    }
+    public long getStateVersion() {
+        return stateVersion;
+    }
 
 }
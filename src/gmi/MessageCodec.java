@@ -0,0 +1,34 @@
+package gmi;
+
+import java.io.IOException;
+
+/**MessageCodec turns a Message into the bytes carried by a Spread message
+ * and back. GroupProxy and ServerSideProxy use the codec set in Codecs,
+ * another format can be plugged in by implementing this interface and
+ * setting it there on all clients and servers.
+ */
+public interface MessageCodec {
+
+    byte[] encode(Message message) throws IOException;
+
+    Message decode(byte[] data) throws IOException;
+
+    /**Encodes a message sent on a connection. the receiver knows both names,
+     * so a codec may write them as references, by default they are not used.
+     *
+     * @param sender private group of the connection
+     * @param group group the connection talks to
+     */
+    default byte[] encode(Message message, String sender, String group) throws IOException {
+        return encode(message);
+    }
+
+    /**Decodes a message received on a connection.
+     *
+     * @param sender private group of the connection which sent the message
+     * @param group group the connection talks to
+     */
+    default Message decode(byte[] data, String sender, String group) throws IOException {
+        return decode(data);
+    }
+}
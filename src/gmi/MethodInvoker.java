@@ -0,0 +1,147 @@
+package gmi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**MethodInvoker invokes one method of the server application through a
+ * MethodHandle which is created once, when the method is registered in
+ * the MethodTable, and adapted to take the target and an argument array
+ * like Method.invoke(). Unlike Method.invoke() the call is not checked and
+ * dispatched reflectively every time, so the JIT can compile it like a
+ * direct call. If no handle can be created for a method it is invoked
+ * reflectively. Methods of interfaces for which StubProcessor has
+ * generated a Dispatcher are called through it instead.
+ */
+public class MethodInvoker {
+
+    private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private final Method method;
+    // to check the arguments as Method.invoke() does
+    private final Class<?>[] parameterTypes;
+    private final MethodHandle handle;
+    private final Dispatcher dispatcher;
+    private final int index;
+
+    public MethodInvoker(Method method) {
+        this.method = method;
+        parameterTypes = method.getParameterTypes();
+        dispatcher = null;
+        index = -1;
+        MethodHandle h = null;
+        try {
+            h = MethodHandles.lookup().unreflect(method)
+                    .asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(SPREAD_TYPE);
+        }
+        catch(IllegalAccessException e) {
+            // not accessible from here, fall back to reflection
+        }
+        handle = h;
+    }
+
+    /**
+     * @param method method which is invoked
+     * @param dispatcher dispatcher generated for the interface of the method
+     * @param index index of the method in the dispatcher
+     */
+    public MethodInvoker(Method method, Dispatcher dispatcher, int index) {
+        this.method = method;
+        parameterTypes = method.getParameterTypes();
+        this.dispatcher = dispatcher;
+        this.index = index;
+        handle = null;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**Invokes the method, with the same contract as Method.invoke().
+     *
+     * @param target object on which the method is invoked
+     * @param args arguments, may be null if the method takes none
+     * @return result of the method, boxed if it is primitive, null if void
+     * @throws IllegalAccessException if the method is not accessible
+     * @throws IllegalArgumentException if the number or the types of the
+     * arguments do not match the parameters of the method
+     * @throws InvocationTargetException wrapping what the method has thrown
+     */
+    public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+        if(dispatcher == null && handle == null) {
+            return method.invoke(target, args);
+        }
+        checkArguments(args, dispatcher == null);
+        try {
+            if(dispatcher != null) {
+                return dispatcher.dispatch(index, target, args);
+            }
+            return (Object) handle.invokeExact(target, args);
+        }
+        catch(WrongMethodTypeException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        catch(Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**Checks the arguments before the call, as Method.invoke() does, so a
+     * mismatch is reported as an IllegalArgumentException and not as a
+     * ClassCastException thrown by the method. the generated dispatchers
+     * cast the arguments to the boxed parameter types, so primitives are
+     * widened only for the handle.
+     */
+    private void checkArguments(Object[] args, boolean widen) {
+        int count = args == null ? 0 : args.length;
+        if(count != parameterTypes.length) {
+            throw new IllegalArgumentException("wrong number of arguments for "+method.getName()+": "+count+" instead of "+parameterTypes.length);
+        }
+        for(int i = 0; i < count; i++) {
+            if(!accepts(parameterTypes[i], args[i], widen)) {
+                throw new IllegalArgumentException("argument type mismatch for "+method.getName()+": argument "+i
+                        +" is "+(args[i] == null ? "null" : args[i].getClass().getName())+" instead of "+parameterTypes[i].getName());
+            }
+        }
+    }
+
+    /**
+     * @return true if the value can be passed for a parameter of the type,
+     * primitives unboxed and widened as by Method.invoke()
+     */
+    private static boolean accepts(Class<?> type, Object value, boolean widen) {
+        if(!type.isPrimitive()) {
+            return value == null || type.isInstance(value);
+        }
+        if(value == null) {
+            return false;
+        }
+        Class<?> primitive = MethodType.methodType(value.getClass()).unwrap().returnType();
+        if(primitive == type) {
+            return true;
+        }
+        if(!widen) {
+            return false;
+        }
+        // widening primitive conversions
+        String from = primitive.getName(), to = type.getName();
+        switch(from) {
+            case "byte":
+                return to.equals("short") || to.equals("int") || to.equals("long") || to.equals("float") || to.equals("double");
+            case "short":
+            case "char":
+                return to.equals("int") || to.equals("long") || to.equals("float") || to.equals("double");
+            case "int":
+                return to.equals("long") || to.equals("float") || to.equals("double");
+            case "long":
+                return to.equals("float") || to.equals("double");
+            case "float":
+                return to.equals("double");
+            default:
+                return false;
+        }
+    }
+}
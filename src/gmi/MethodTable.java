@@ -2,7 +2,10 @@
 package gmi;
 
 import java.lang.reflect.Method;
-import java.lang.annotation.Annotation;
+import gmi.protocols.Anycast;
+import gmi.protocols.Multicast;
+import gmi.protocols.ReadOnly;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 
@@ -21,6 +24,15 @@ public class MethodTable {
     private HashMap<Integer, Method> mergingtable;
     private HashMap<Integer, String> table;
     private HashMap<Integer, String> annotation;
+    private HashMap<Integer, Multicast> multicast = new HashMap<Integer, Multicast>();
+    private HashMap<Integer, ReadOnly> readOnly = new HashMap<Integer, ReadOnly>();
+    // external methods by method ID, the ID is the index in these arrays
+    private Method[] externalMethods = new Method[0];
+    private String[] externalSignatures = new String[0], externalProtocols = new String[0];
+    // invokers of all the methods in the tables, created when they are added
+    private HashMap<Method, MethodInvoker> invokers = new HashMap<Method, MethodInvoker>();
+    // signatures of the methods listed by a generated Dispatcher
+    private HashMap<Method, String> signatures = new HashMap<Method, String>();
     Class server;
 
     public MethodTable() {
@@ -38,33 +50,36 @@ public class MethodTable {
     public void addMethod(Class server) {
         this.server = server;       
         
-        /** Getting Annotation defined on methods defined in server and stroing them in
-         * annotation() hashmap.
+        /** Getting the protocol annotation defined on methods defined in server and
+         * stroing them in annotation() hashmap, the Multicast and ReadOnly
+         * annotations themselves in multicast() and readOnly(). other annotations are ignored.
          */
         Method[] serverMethods = server.getDeclaredMethods();
         for(Method m : serverMethods) {
             String name = getNameAndDescriptor(m);
             int key = name.hashCode();
-             Annotation[] annos = m.getAnnotations();
-                   if(annos.length>0) {
-                      for(int k=0;k<annos.length; k++) {
-                          String ann  = annos[k].toString();
-                           if(ann !=null) {
-                                int pos = ann.indexOf(".",13);           
-                                ann = ann.substring(pos+1, ann.length()-2);        
-                            }
-                           annotation.put(key,ann);                           
-                      }
-                 }
+            if(m.isAnnotationPresent(Multicast.class)) {
+                annotation.put(key,"Multicast");
+                multicast.put(key, m.getAnnotation(Multicast.class));
+            }
+            else if(m.isAnnotationPresent(Anycast.class)) {
+                annotation.put(key,"Anycast");
+            }
+            if(m.isAnnotationPresent(ReadOnly.class)) {
+                readOnly.put(key, m.getAnnotation(ReadOnly.class));
+            }
         }
          
         Class[] interfaces = server.getInterfaces();
         for( int i=0; i<interfaces.length; i++) {
+            if(!isGMIInterface(interfaces[i])) {
+                continue;
+            }
+            Method methods[] = getMethods(interfaces[i]);
          /** Getting Method defined in server which are declared as internal methods to server
           *and stroing them in igmitable() hashmap.
           */
             if(InternalGMIListener.class.isAssignableFrom(interfaces[i])) {
-                Method methods[] = interfaces[i].getMethods();
                 for(int j=0; j<methods.length; j++) {
                     Class retType = methods[j].getReturnType();
                     if (!(retType.toString().equals("void") || retType.equals(Object.class))) {
@@ -82,7 +97,6 @@ public class MethodTable {
           *  which client can call to get service and stroing them in egmitable() hashmap.
           */
             if(ExternalGMIListener.class.isAssignableFrom(interfaces[i])) {
-                Method methods[] = interfaces[i].getMethods();
                 for(int j=0; j<methods.length; j++) {                    
                    String name = getNameAndDescriptor(methods[j]);
                    int key = name.hashCode();                   
@@ -94,7 +108,6 @@ public class MethodTable {
           * there is a memebership change in server group and stroing them memebershiptable() hashmap.
           */
             if(MembershipListener.class.isAssignableFrom(interfaces[i])) {
-                Method methods[] = interfaces[i].getMethods();
                 for(int j=0; j<methods.length; j++) {                    
                    String name = getNameAndDescriptor(methods[j]);
                    int key = name.hashCode();                  
@@ -103,7 +116,6 @@ public class MethodTable {
                 }
             }
             if(MergingListener.class.isAssignableFrom(interfaces[i])) {
-                Method methods[] = interfaces[i].getMethods();
                 for(int j=0; j<methods.length; j++) {                    
                    String name = getNameAndDescriptor(methods[j]);
                    int key = name.hashCode();                  
@@ -112,6 +124,64 @@ public class MethodTable {
                  }                       
               } 
         }
+        numberExternalMethods();
+        createInvokers(igmitable);
+        createInvokers(egmitable);
+        createInvokers(membershiptable);
+        createInvokers(mergingtable);
+    }
+    
+    private static boolean isGMIInterface(Class<?> iface) {
+        return InternalGMIListener.class.isAssignableFrom(iface) || ExternalGMIListener.class.isAssignableFrom(iface)
+                || MembershipListener.class.isAssignableFrom(iface) || MergingListener.class.isAssignableFrom(iface);
+    }
+    
+    /** Returns the methods of the interface as the Dispatcher generated by
+     * StubProcessor lists them, with their signatures and invokers, so they
+     * are invoked through the dispatcher. only an interface compiled without
+     * the processor, or with type parameters, has its methods looked up by
+     * reflection, they are then invoked through method handles.
+     */
+    private Method[] getMethods(Class<?> iface) {
+        Dispatcher dispatcher = Stubs.getDispatcher(iface);
+        if(dispatcher == null) {
+            return iface.getMethods();
+        }
+        Method[] methods = dispatcher.getMethods();
+        String[] names = dispatcher.getSignatures();
+        for(int i=0; i<methods.length; i++) {
+            signatures.put(methods[i], names[i]);
+            invokers.put(methods[i], new MethodInvoker(methods[i], dispatcher, i));
+        }
+        return methods;
+    }
+    
+    private void createInvokers(HashMap<Integer, Method> methods) {
+        for(Method m : methods.values()) {
+            if(!invokers.containsKey(m)) {
+                invokers.put(m, new MethodInvoker(m));
+            }
+        }
+    }
+    
+    /** Gives the external methods dense IDs. the IDs follow the order of
+     * the sorted signatures, so all servers running the same application
+     * give the same IDs whatever order reflection returns the methods in.
+     */
+    private void numberExternalMethods() {
+        externalSignatures = new String[egmitable.size()];
+        int i = 0;
+        for(Method m : egmitable.values()) {
+            externalSignatures[i++] = getNameAndDescriptor(m);
+        }
+        Arrays.sort(externalSignatures);
+        externalMethods = new Method[externalSignatures.length];
+        externalProtocols = new String[externalSignatures.length];
+        for(i=0; i<externalSignatures.length; i++) {
+            int key = externalSignatures[i].hashCode();
+            externalMethods[i] = egmitable.get(key);
+            externalProtocols[i] = annotation.get(key) == null ? "Anycast" : annotation.get(key);
+        }
     }
     
   /**Return the requested method  
@@ -191,6 +261,39 @@ public class MethodTable {
       
   }
   
+  /**Returns the invoker through which the method is invoked on the server.
+   * 
+   * @param m method from one of the tables
+   * @return invoker of the method
+   */
+  public MethodInvoker getInvoker(Method m) {
+      MethodInvoker invoker = invokers.get(m);
+      return invoker != null ? invoker : new MethodInvoker(m);
+  }
+  
+  /**Returns the signatures of the external methods, indexed by method ID.
+   * the table is sent to clients when they create the server stub.
+   */
+  public String[] getExternalSignatures() {
+      return externalSignatures.clone();
+  }
+  
+  /**
+   * @param id method ID of an external method
+   * @return the method, or null if there is no method with this ID
+   */
+  public Method getExternalMethod(int id) {
+      return id < externalMethods.length ? externalMethods[id] : null;
+  }
+  
+  public String getExternalSignature(int id) {
+      return externalSignatures[id];
+  }
+  
+  public String getExternalProtocol(int id) {
+      return externalProtocols[id];
+  }
+  
   public String getMethodType(String name) {
       int key = name.hashCode();
       return (String) table.get(key);
@@ -201,7 +304,27 @@ public class MethodTable {
       return (String) annotation.get(key);
   }
     
+  /**
+   * @param name signature of a method
+   * @return Multicast annotation of the method, null if it has none
+   */
+  public Multicast getMulticast(String name) {
+      return multicast.get(name.hashCode());
+  }
+    
+  /**
+   * @param name signature of a method
+   * @return ReadOnly annotation of the method, null if it has none
+   */
+  public ReadOnly getReadOnly(String name) {
+      return readOnly.get(name.hashCode());
+  }
+    
   public String getNameAndDescriptor(Method m) {
+    String signature = signatures.get(m);
+    if(signature != null) {
+        return signature;
+    }
     StringBuilder desc = new StringBuilder();  
     Class returnType = m.getReturnType();
     if (returnType == void.class) {   
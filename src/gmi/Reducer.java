@@ -0,0 +1,99 @@
+package gmi;
+
+import gmi.protocols.Reduce;
+import java.util.function.BinaryOperator;
+
+/**Reducer reduces the results of the members to an internal invocation as
+ * they arrive, by the Reduce annotation of the method. One is created for
+ * every invocation. Results which are exceptions or null are left out.
+ */
+public class Reducer {
+
+    private final Reduce.Function function;
+    private final BinaryOperator<Object> operator;
+    private Object value;
+    private boolean decided = false;
+
+    /**
+     * @param reduce annotation of the invoked method
+     */
+    @SuppressWarnings("unchecked")
+    public Reducer(Reduce reduce) {
+        function = reduce.value();
+        if(function == Reduce.Function.CUSTOM) {
+            if(reduce.operator() == Reduce.NoOperator.class) {
+                throw new IllegalArgumentException("No operator given for "+reduce);
+            }
+            try {
+                operator = (BinaryOperator<Object>) reduce.operator().getDeclaredConstructor().newInstance();
+            }
+            catch(Exception e) {
+                throw new IllegalArgumentException("Can not create the operator of "+reduce, e);
+            }
+        }
+        else {
+            operator = null;
+        }
+        if(function == Reduce.Function.ANY_TRUE) {
+            value = Boolean.FALSE;
+        }
+    }
+
+    /**Adds the result of one member.
+     *
+     * @param result result returned by the member
+     * @return true if the value is decided, the other results can not change it
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized boolean add(Object result) {
+        if(decided || result == null || result instanceof Throwable) {
+            return decided;
+        }
+        switch(function) {
+            case ANY_TRUE:
+                if(Boolean.TRUE.equals(result)) {
+                    value = Boolean.TRUE;
+                    decided = true;
+                }
+                break;
+            case FIRST_NON_NULL:
+                value = result;
+                decided = true;
+                break;
+            case SUM:
+                value = sum(value == null ? (Number) 0L : (Number) value, (Number) result);
+                break;
+            case MIN:
+                if(value == null || ((Comparable<Object>) result).compareTo(value) < 0) {
+                    value = result;
+                }
+                break;
+            case MAX:
+                if(value == null || ((Comparable<Object>) result).compareTo(value) > 0) {
+                    value = result;
+                }
+                break;
+            default:
+                value = value == null ? result : operator.apply(value, result);
+        }
+        return decided;
+    }
+
+    /**
+     * @return value reduced from the results added so far
+     */
+    public synchronized Object getValue() {
+        return value;
+    }
+
+    private static Number sum(Number a, Number b) {
+        if(isIntegral(a) && isIntegral(b)) {
+            return a.longValue() + b.longValue();
+        }
+        return a.doubleValue() + b.doubleValue();
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+}
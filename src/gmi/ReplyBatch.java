@@ -0,0 +1,90 @@
+package gmi;
+
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+/**ReplyBatch collects the acknowledgements and the replies to the requests
+ * of one batch sent by a GroupProxy, so that they go back to the client in
+ * one message each instead of one message per request. The acknowledgements
+ * are sent as soon as all requests of the batch are dispatched, the replies
+ * when all of them are in or when HOLD milliseconds have passed since the
+ * dispatch, whichever comes first. Replies which come later are sent on
+ * their own.
+ */
+public class ReplyBatch {
+
+    // longest time in milliseconds a reply is held back for the others
+    public static final long HOLD = 50;
+    private final ServerSideProxy proxy;
+    private final String receiver;
+    private final Message[] requests;
+    private ArrayList<Message> acks = new ArrayList<Message>();
+    private ArrayList<Message> replies = new ArrayList<Message>();
+    private boolean acksSent = false, repliesSent = false;
+    private ScheduledFuture<?> timer;
+
+    public ReplyBatch(ServerSideProxy proxy, String receiver, Message[] requests) {
+        this.proxy = proxy;
+        this.receiver = receiver;
+        this.requests = requests;
+    }
+
+    public String getReceiver() {
+        return receiver;
+    }
+
+    public Message[] getRequests() {
+        return requests;
+    }
+
+    /**Adds an acknowledgement or a reply to the batch.
+     *
+     * @param msg message to the client
+     * @return false if the message has to be sent on its own because this
+     * part of the batch is sent already
+     */
+    public synchronized boolean add(Message msg) {
+        if(msg.getMethodSignature().equals("Ack")) {
+            if(acksSent) {
+                return false;
+            }
+            acks.add(msg);
+            return true;
+        }
+        if(repliesSent) {
+            return false;
+        }
+        replies.add(msg);
+        if(replies.size() == requests.length) {
+            sendReplies();
+        }
+        return true;
+    }
+
+    /**Sends the acknowledgements collected while the batch was dispatched
+     * and starts waiting for the replies which are not in yet.
+     */
+    public synchronized void sendAcks() {
+        acksSent = true;
+        proxy.sendBatch(receiver, acks);
+        acks = null;
+        if(!repliesSent) {
+            timer = TimerService.schedule(new Runnable() {
+                public void run() {
+                    sendReplies();
+                }
+            }, HOLD);
+        }
+    }
+
+    private synchronized void sendReplies() {
+        if(repliesSent) {
+            return;
+        }
+        repliesSent = true;
+        TimerService.cancel(timer);
+        proxy.removeBatch(this);
+        proxy.sendBatch(receiver, replies);
+        replies = null;
+    }
+}
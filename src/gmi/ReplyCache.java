@@ -0,0 +1,103 @@
+package gmi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**ReplyCache remembers the requests a server has executed and the replies
+ * it has sent for them, keyed by the original sender and the message
+ * number of the request, which stay the same when a client sends a request
+ * again. A request which is received again while it is executed is
+ * dropped, the reply to the first one answers it, and a request which is
+ * received again after it was executed is answered with the cached reply
+ * instead of being executed a second time. Entries expire after a time and
+ * the oldest ones are dropped when the cache is full.
+ */
+public class ReplyCache {
+
+    /**Returned by begin() for a request which is being executed. */
+    public static final Message PENDING = new Message();
+
+    private final int capacity;
+    private final long expiry;
+    private final LinkedHashMap<String, Cached> entries;
+
+    private static class Cached {
+        final Message reply;
+        final long created;
+
+        Cached(Message reply, long created) {
+            this.reply = reply;
+            this.created = created;
+        }
+    }
+
+    /**
+     * @param capacity maximum number of requests remembered
+     * @param expiry time in milliseconds after which a request is forgotten
+     */
+    public ReplyCache(int capacity, long expiry) {
+        this.capacity = capacity;
+        this.expiry = expiry;
+        entries = new LinkedHashMap<String, Cached>(16, 0.75f, false) {
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > ReplyCache.this.capacity;
+            }
+        };
+    }
+
+    public static String key(String originalSender, int messageNumber) {
+        return originalSender + "#" + messageNumber;
+    }
+
+    /**Registers a request which is about to be executed.
+     *
+     * @param key key of the request
+     * @return null if the request is to be executed, PENDING if it is being
+     * executed already, otherwise the reply which was sent for it
+     */
+    public synchronized Message begin(String key) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        Cached entry = entries.get(key);
+        if(entry != null) {
+            return entry.reply;
+        }
+        entries.put(key, new Cached(PENDING, now));
+        return null;
+    }
+
+    /**Stores the reply to a request, also one executed by another server.
+     *
+     * @param key key of the request
+     * @param reply reply which was sent
+     */
+    public synchronized void complete(String key, Message reply) {
+        entries.remove(key);
+        entries.put(key, new Cached(reply, System.currentTimeMillis()));
+    }
+
+    /**Forgets a request which was not executed, so that it is executed when
+     * it is received again.
+     *
+     * @param key key of the request
+     */
+    public synchronized void abort(String key) {
+        Cached entry = entries.get(key);
+        if(entry != null && entry.reply == PENDING) {
+            entries.remove(key);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // entries are in the order they were stored, so the expired ones are first
+    private void expire(long now) {
+        Iterator<Cached> i = entries.values().iterator();
+        while(i.hasNext() && now - i.next().created > expiry) {
+            i.remove();
+        }
+    }
+}
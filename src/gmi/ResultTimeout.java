@@ -1,49 +1,26 @@
-
 package gmi;
-import spread.SpreadMessage;
-import spread.SpreadException;
 
 /** Timer in case if server crash after sending the acknowledgement of message received 
- *but befire sending the reply of requested service.
+ *but befire sending the reply of requested service. It is scheduled on the
+ *TimerService and cancelled by GroupProxy when the reply arrives.
  * @author Gurvinder Singh
  */
-public class ResultTimeout extends Thread {
+public class ResultTimeout implements Runnable {
 
+    // time to wait for the reply in milliseconds until the round trip
+    // time of the server has been measured
+    public static final long DELAY = 5000;
     private GroupProxy proxy;   
-    private String sender;
-    private SpreadMessage msg;
-    private Object obj;
-    boolean acknowledge;
-    private Boolean ack;
+    private Message msg;
     
-    public ResultTimeout(GroupProxy proxy, String sender, SpreadMessage msg) {
+    public ResultTimeout(GroupProxy proxy, Message msg) {
        this.proxy = proxy;       
        this.msg =  msg;   
-       this.sender = sender;
     }  
-    @Override
+    
     public void run() {
-        try {
-            Thread.sleep(5000);
-        }
-        catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        try {
-            obj = msg.getObject();            
-        }
-        catch (SpreadException e) {
-            e.printStackTrace();
-        }
-        
-        if(obj instanceof Message) {                     
-            ack = (Boolean)proxy.getResultAck().get(((Message)obj).getMessageNumber());          
-        }
-        
-        acknowledge = ack.booleanValue();
-        if(!acknowledge) {                                         
-                proxy.resultTimeout(obj);
-            
+        if(!proxy.isCompleted(msg.getMessageNumber())) {                                         
+                proxy.resultTimeout(msg);
          }       
     }
 }
@@ -0,0 +1,104 @@
+package gmi;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**RttEstimator keeps a smoothed round trip time and its mean deviation for
+ * every server and derives the timeout to use for the next message sent to
+ * it, in the way of Jacobson/Karels as used by TCP:
+ *
+ * <pre>
+ *   rttvar  = 3/4 rttvar + 1/4 |srtt - sample|
+ *   srtt    = 7/8 srtt   + 1/8 sample
+ *   timeout = srtt + 4 rttvar
+ * </pre>
+ *
+ * The timeout is doubled for every retransmission of the same message.
+ * Until the first sample arrives the initial timeout is used.
+ */
+public class RttEstimator {
+
+    private final long initial, min, max;
+    private final ConcurrentHashMap<String, Estimate> estimates;
+
+    /**
+     * @param initial timeout used for a server without samples, in milliseconds
+     * @param min lower bound of the timeout
+     * @param max upper bound of the timeout
+     */
+    public RttEstimator(long initial, long min, long max) {
+        this.initial = initial;
+        this.min = min;
+        this.max = max;
+        estimates = new ConcurrentHashMap<String, Estimate>();
+    }
+
+    /**Adds a round trip time measured for a server. Only messages which are
+     * sent once may be measured, the reply to a retransmitted message can
+     * not be told apart from the reply to the first transmission.
+     *
+     * @param server server the message was sent to
+     * @param rtt measured round trip time in milliseconds
+     */
+    public void sample(String server, long rtt) {
+        getEstimate(server).sample(rtt);
+    }
+
+    /**
+     * @param server server a message is sent to
+     * @return timeout in milliseconds for the message
+     */
+    public long getTimeout(String server) {
+        return getTimeout(server, 0);
+    }
+
+    /**
+     * @param server server a message is sent to
+     * @param retransmissions number of times the message has been sent before
+     * @return timeout in milliseconds for the message, doubled for every
+     * retransmission
+     */
+    public long getTimeout(String server, int retransmissions) {
+        Estimate estimate = estimates.get(server);
+        long timeout = estimate == null ? initial : estimate.getTimeout();
+        return bound(timeout << Math.min(retransmissions, 16));
+    }
+
+    private Estimate getEstimate(String server) {
+        Estimate estimate = estimates.get(server);
+        if(estimate == null) {
+            estimate = new Estimate();
+            Estimate existing = estimates.putIfAbsent(server, estimate);
+            if(existing != null) {
+                estimate = existing;
+            }
+        }
+        return estimate;
+    }
+
+    private class Estimate {
+        private double srtt, rttvar;
+        private boolean measured = false;
+        private long timeout = initial;
+
+        synchronized void sample(long rtt) {
+            if(!measured) {
+                srtt = rtt;
+                rttvar = rtt / 2.0;
+                measured = true;
+            }
+            else {
+                rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+                srtt = 0.875 * srtt + 0.125 * rtt;
+            }
+            timeout = bound((long) Math.ceil(srtt + 4 * rttvar));
+        }
+
+        synchronized long getTimeout() {
+            return timeout;
+        }
+    }
+
+    private long bound(long timeout) {
+        return Math.max(min, Math.min(max, timeout));
+    }
+}
@@ -0,0 +1,35 @@
+package gmi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**SerializedMessageCodec encodes messages with Java serialization, as
+ * SpreadMessage.setObject() does. It is used to read messages of peers
+ * which still send serialized messages.
+ */
+public class SerializedMessageCodec implements MessageCodec {
+
+    public byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public Message decode(byte[] data) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return (Message) in.readObject();
+        }
+        catch(ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gmi;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**ServerSelector chooses the server a GroupProxy sends a request to. It
+ * uses the power of two choices: two members of the view are picked at
+ * random and the request goes to the less loaded one. The load of a server
+ * is the number of requests this client has outstanding on it plus the
+ * load the server reported in its last message, reports older than
+ * REPORT_AGE are not used.
+ */
+public class ServerSelector {
+
+    // time in milliseconds for which a load report of a server is used
+    private static final long REPORT_AGE = 1000;
+    private final Random generator = new Random();
+    private final ConcurrentHashMap<String, Load> loads = new ConcurrentHashMap<String, Load>();
+
+    /**
+     * @param view members of the group which can be chosen
+     * @return the chosen server, or null if the view is empty
+     */
+    public String choose(List<String> view) {
+        String first, second;
+        synchronized(view) {
+            int size = view.size();
+            if(size == 0) {
+                return null;
+            }
+            if(size == 1) {
+                return view.get(0);
+            }
+            int i = generator.nextInt(size);
+            int j = generator.nextInt(size - 1);
+            if(j >= i) {
+                j++;
+            }
+            first = view.get(i);
+            second = view.get(j);
+        }
+        long now = System.currentTimeMillis();
+        return getLoad(second, now) < getLoad(first, now) ? second : first;
+    }
+
+    /**Called when a request is sent to a server. */
+    public void sent(String server) {
+        get(server).outstanding.incrementAndGet();
+    }
+
+    /**Called when a request sent to a server is completed or sent elsewhere. */
+    public void done(String server) {
+        get(server).outstanding.decrementAndGet();
+    }
+
+    /**Stores the load a server has reported in a message.
+     *
+     * @param server server which sent the message
+     * @param inFlight number of requests the server is executing
+     * @param queueDepth number of requests waiting to be executed
+     */
+    public void report(String server, int inFlight, int queueDepth) {
+        Load load = get(server);
+        load.reported = inFlight + queueDepth;
+        load.reportedAt = System.currentTimeMillis();
+    }
+
+    private int getLoad(String server, long now) {
+        Load load = loads.get(server);
+        if(load == null) {
+            return 0;
+        }
+        int reported = now - load.reportedAt < REPORT_AGE ? load.reported : 0;
+        return load.outstanding.get() + reported;
+    }
+
+    private Load get(String server) {
+        Load load = loads.get(server);
+        if(load == null) {
+            load = new Load();
+            Load existing = loads.putIfAbsent(server, load);
+            if(existing != null) {
+                load = existing;
+            }
+        }
+        return load;
+    }
+
+    private static class Load {
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile int reported;
+        volatile long reportedAt;
+    }
+}
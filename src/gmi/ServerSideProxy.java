@@ -2,12 +2,23 @@
 package gmi;
 
 import spread.*;
-import java.lang.reflect.Proxy;
+import gmi.protocols.Delivery;
+import gmi.protocols.Multicast;
+import gmi.protocols.ReadOnly;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.net.InetAddress;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**ServerSideProxy Object implements the AdvancedMessageListener interface provided
  * by Spread java API to receive the message, it differentiate received message depending upon
@@ -32,7 +43,19 @@ public class ServerSideProxy implements AdvancedMessageListener{
     private String methodSignature, messageType, protocol, leader = "null";
     private Method method;
     private int messageNumber;
-    private HashMap<String, Integer> externalmessageNumber;
+    // sessions of the clients, forgotten after SESSION_IDLE milliseconds without requests
+    public static final int SESSION_CAPACITY = 10000;
+    public static final long SESSION_IDLE = 300000;
+    private SessionTable sessions = new SessionTable(SESSION_CAPACITY, SESSION_IDLE);
+    // accepted requests of clients are forgotten after ADMISSION_STALE
+    // milliseconds without a reply
+    public static final long ADMISSION_STALE = 60000;
+    private volatile AdmissionLimit admission = new AdmissionLimit(16 * ExternalGMIService.WORKERS,
+            ExternalGMIService.WORKERS, ExternalGMIService.WORKERS * ExternalGMIService.QUEUE_CAPACITY, 1000);
+    // time the accepted requests were accepted, by client and message number
+    private ConcurrentHashMap<String, Long> admitted = new ConcurrentHashMap<String, Long>();
+    // the accepted requests in the order they were accepted, to find the stale ones
+    private ConcurrentLinkedQueue<Map.Entry<String, Long>> admissionOrder = new ConcurrentLinkedQueue<Map.Entry<String, Long>>();
     private Object[] args;
     private SpreadGroup group;
     private SpreadConnection connection; 
@@ -41,6 +64,16 @@ public class ServerSideProxy implements AdvancedMessageListener{
     private InternalGMIService internalService;
     private MergingService mergingService;
     private long startTime;
+    // membership changes and state transfers are handled one after the other
+    // in the order they were received
+    private StripedExecutor events = new StripedExecutor("gmi-events", 1, Integer.MAX_VALUE);
+    private volatile long viewLatency = -1;
+    // external invocations being executed
+    private AtomicInteger inFlight = new AtomicInteger();
+    // number of requests delivered to the group, the same in all the members
+    private AtomicLong stateVersion = new AtomicLong();
+    // batches whose replies are being collected, by client and message number
+    private ConcurrentHashMap<String, ReplyBatch> replyBatches = new ConcurrentHashMap<String, ReplyBatch>();
     private final boolean DEBUG = false;
 
     public ServerSideProxy(Object server, int port, String name, String address) {
@@ -54,7 +87,6 @@ public class ServerSideProxy implements AdvancedMessageListener{
     externalService = new ExternalGMIService(this, server);
     internalService = new InternalGMIService(this, server);
     createSkelton(server);
-    externalmessageNumber = new HashMap<String, Integer>();
     connection = new SpreadConnection();
     group = new SpreadGroup();    
    
@@ -89,15 +121,22 @@ public class ServerSideProxy implements AdvancedMessageListener{
         }
         connection.add(this);
     }
-    /**this method is invoked when membership message is received and it create
-     * a new thread to handle the message depending upon it's cause of triggering
+    /**this method is invoked when membership message is received and it queues
+     * the message on the event loop, which handles it depending upon it's cause
+     * of triggering after the membership and state messages received before.
      */ 
     
-    public void membershipMessageReceived(SpreadMessage msg) {
-    
-        membershipService.getMessage(msg);
-        Thread t = new Thread(membershipService);
-        t.start();              
+    public void membershipMessageReceived(final SpreadMessage msg) {
+        final long received = System.currentTimeMillis();
+        events.execute(null, new Runnable() {
+            public void run() {
+                membershipService.viewChanged(msg);
+                viewLatency = System.currentTimeMillis() - received;
+                if(DEBUG) {
+                    System.out.println("View installed in "+viewLatency+"ms");
+                }
+            }
+        });
     }
     /**this method is invoked when regular message is received and depend upon
      * the methodSignature which is requested to be invoked it delivered message
@@ -106,27 +145,67 @@ public class ServerSideProxy implements AdvancedMessageListener{
     
     public void regularMessageReceived(SpreadMessage msg) {
         
-        Object obj = null;
-        sender = msg.getSender().toString();         
+        Message message = null;
+        String from = msg.getSender().toString();         
         try {
-            obj = msg.getObject();
+            message = Codecs.decode(msg.getData(), from, groupname);
         }
-        catch (SpreadException e) {
+        catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }                  
-        Message message = (Message) obj;
+        if("Batch".equals(message.getMethodSignature())){
+            receiveBatch(from, message);
+            return;
+        }
+        handleMessage(from, message);
+    }
+    /**receiveBatch() unpacks the requests a client has sent together in one
+     * message and handles each of them as if it was received on its own. the
+     * acknowledgements and replies for them are collected by a ReplyBatch and
+     * sent back together as well.
+     *
+     * @param from client which sent the batch
+     * @param batch message carrying the requests as its arguments
+     */
+    private void receiveBatch(String from, Message batch) {
+        Object[] requests = batch.getArguments();
+        Message[] messages = new Message[requests.length];
+        for(int i=0;i<requests.length;i++){
+            messages[i] = (Message) requests[i];
+        }
+        ReplyBatch replies = new ReplyBatch(this, from, messages);
+        for(Message request : messages){
+            replyBatches.put(from+"#"+request.getMessageNumber(), replies);
+        }
+        if(DEBUG) {
+            System.out.println("Received batch of "+messages.length+" from "+from);
+        }
+        for(Message request : messages){
+            handleMessage(from, request);
+        }
+        replies.sendAcks();
+    }
+    
+    private void handleMessage(String from, Message message) {
+        sender = from;
         messageNumber = message.getMessageNumber();
         externalGroupName = message.getGroupName();
         if(!groupname.equals(externalGroupName)){                
-                externalmessageNumber.put(sender, messageNumber);
+                if("Request".equals(message.getMessageType())) {
+                    if(!admit(sender, message)) {
+                        refuse(sender, messageNumber);
+                        return;
+                    }
+                    sessions.requestReceived(sender, messageNumber);
+                }
                 Message acknowledge = new Message();
-                acknowledge.setMessageNumber((Integer)externalmessageNumber.get(sender));
+                acknowledge.setMessageNumber(messageNumber);
                 acknowledge.setMessageType("Reply");
                 acknowledge.setMethodSignature("Ack");
                 sendAnycast(sender,acknowledge);
                 if(DEBUG) {
-                    System.out.println("number is: "+externalmessageNumber.get(sender)+" sender is: "+sender);
+                    System.out.println("number is: "+messageNumber+" sender is: "+sender);
                 }                         
         }               
         methodSignature = message.getMethodSignature();  
@@ -137,14 +216,63 @@ public class ServerSideProxy implements AdvancedMessageListener{
             System.out.println("Result is: "+result);
             System.out.println("Received Method Signature: "+methodSignature);
         }        
+        if(message.getMethodId() >= 0){
+            // external method numbered by the client with the table sent in
+            // the getServerStub reply, no signature lookup is needed
+            int methodId = message.getMethodId();
+            method = methodtable.getExternalMethod(methodId);
+            if(method == null){
+                System.out.println("Method not found");
+                return;
+            }
+            methodSignature = methodtable.getExternalSignature(methodId);
+            message.setMethodSignature(methodSignature);
+            args = message.getArguments();
+            externalService.invokeMethod(method, methodtable.getExternalProtocol(methodId), methodSignature, args, sender, message);
+            return;
+        }
+        if(methodSignature.equals("cacheReply")){
+            externalService.cacheReply((Message) result);
+            return;
+        }
         if(methodSignature.equals("getView")){           
             externalService.invokeMethod(method, "Anycast", methodSignature, args, sender, message);            
             return;
         }
-        if(methodSignature.equals("putState")){
-            mergingService.putGlobalState(message.getResult(), sender, messageType);
-            Thread t = new Thread(mergingService);
-            t.start();
+        if(methodSignature.equals("putChanges")){
+            final Object changes = message.getResult();
+            final Object[] header = message.getArguments();
+            final String cause = messageType;
+            final long version = message.getStateVersion();
+            events.execute(null, new Runnable() {
+                public void run() {
+                    mergingService.putChanges(changes, from, header, cause, version);
+                }
+            });
+            return;
+        }
+        if(methodSignature.equals("stateChunk")){
+            final byte[] chunk = (byte[]) message.getResult();
+            final Object[] header = message.getArguments();
+            final String cause = messageType;
+            final long version = message.getStateVersion();
+            events.execute(null, new Runnable() {
+                public void run() {
+                    mergingService.putStateChunk(from, chunk, header, cause, version);
+                }
+            });
+            return;
+        }
+        if(methodSignature.equals("advertState")){
+            final long advertised = ((Number) result).longValue();
+            final String cause = messageType;
+            events.execute(null, new Runnable() {
+                public void run() {
+                    if(isLeader() && !from.equals(getIdentifier())) {
+                        mergingService.stateAdvertised(from, advertised, cause);
+                    }
+                }
+            });
             return;
         }
         if(methodSignature.equals("getServerStub")){            
@@ -155,8 +283,11 @@ public class ServerSideProxy implements AdvancedMessageListener{
                 name[i] = externalInterface[i].getName();
                 }
             replyMessage.setResult(name);
+            // method IDs the client uses instead of the signatures
+            replyMessage.setArguments(methodtable.getExternalSignatures());
             replyMessage.setMessageType("Reply");
             replyMessage.setMethodSignature(methodSignature);                       
+            replyMessage.setMessageNumber(messageNumber);
             sendAnycast(sender,replyMessage);
             return;
         }
@@ -172,7 +303,7 @@ public class ServerSideProxy implements AdvancedMessageListener{
                if(DEBUG) {
                    System.out.println("invoking internal" + methodSignature);
                }                    
-               internalService.invokeMethod(method, sender, args, result, methodSignature, messageType);
+               internalService.invokeMethod(method, sender, args, result, methodSignature, messageType, messageNumber);
             }
             if(methodType.equals("EGMI")){  
                if(DEBUG) {
@@ -182,7 +313,75 @@ public class ServerSideProxy implements AdvancedMessageListener{
             }                
         }   
     }   
-    /**sendAnycast() sends the anycast message to the receiver.
+    /**admit() checks the request of a client against the admission limit.
+     * requests for the view and the stub are always accepted, as is a request
+     * which is accepted already and sent again.
+     * 
+     * @param from client which sent the request
+     * @param request request received
+     * @return true if the request is accepted
+     */
+    private boolean admit(String from, Message request) {
+        if(request.getMethodId() < 0 && (request.getMethodSignature().equals("getView")
+                || request.getMethodSignature().equals("getServerStub"))) {
+            return true;
+        }
+        String key = from+"#"+request.getMessageNumber();
+        if(admitted.containsKey(key)) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        expireAdmitted(now);
+        if(!admission.tryAcquire()) {
+            if(DEBUG) {
+                System.out.println("Overloaded, refusing "+key+" limit is: "+admission.getLimit());
+            }
+            return false;
+        }
+        admitted.put(key, now);
+        admissionOrder.add(new AbstractMap.SimpleImmutableEntry<String, Long>(key, now));
+        return true;
+    }
+    /**Drops the oldest accepted requests which are answered already, and
+     * releases those which have waited for their reply longer than
+     * ADMISSION_STALE, as those of a Multicast invocation which timed out.
+     * it stops at the first request which is still outstanding and recent,
+     * so every request is looked at about once.
+     * 
+     * @param now current time
+     */
+    private void expireAdmitted(long now) {
+        Map.Entry<String, Long> oldest;
+        while((oldest = admissionOrder.peek()) != null) {
+            Long accepted = oldest.getValue();
+            if(accepted.equals(admitted.get(oldest.getKey()))) {
+                if(now - accepted <= ADMISSION_STALE) {
+                    return;
+                }
+                if(admitted.remove(oldest.getKey(), accepted)) {
+                    admission.release(now - accepted, true);
+                }
+            }
+            admissionOrder.poll();
+        }
+    }
+    /**refuse() tells a client to send its request to another member at once,
+     * as when this member is overloaded.
+     * 
+     * @param receiver client which sent the request
+     * @param messageNumber message number of the request
+     */
+    public void refuse(String receiver, int messageNumber) {
+        Message overloaded = new Message();
+        overloaded.setMessageNumber(messageNumber);
+        overloaded.setMessageType("Reply");
+        overloaded.setMethodSignature("Overloaded");
+        sendAnycast(receiver, overloaded);
+    }
+    /**sendAnycast() sends the anycast message to the receiver. replies must
+     * already carry the message number of the request they answer, replies
+     * to a request which came in a batch are collected and sent with the
+     * replies to the other requests of the batch.
      * 
      * @param receiver to whom the message is to be sent.
      * @param obj message which is to be sent
@@ -191,21 +390,78 @@ public class ServerSideProxy implements AdvancedMessageListener{
         if(DEBUG) {
             System.out.println("Sending reply to: "+receiver+" reply is: "+obj.getResult());
         }
-	if(!getCurrentView().getView().contains(receiver)) {
-            try{
-                obj.setMessageNumber((Integer)externalmessageNumber.get(receiver));
+        if(!"Ack".equals(obj.getMethodSignature())) {
+            sessions.replySent(receiver, obj.getMessageNumber());
+            Long accepted = admitted.remove(receiver+"#"+obj.getMessageNumber());
+            if(accepted != null) {
+                admission.release(System.currentTimeMillis() - accepted, obj.getResult() instanceof RejectedExecutionException);
             }
-            catch(NullPointerException e){}
         }
+        ReplyBatch batch = replyBatches.get(receiver+"#"+obj.getMessageNumber());
+        if(batch != null && batch.add(obj)) {
+            return;
+        }
+        unicast(receiver, obj);
+    }
+    /**sendBatch() sends the given replies to the receiver in one message.
+     * 
+     * @param receiver to whom the replies are to be sent
+     * @param replies replies to the requests of one batch
+     */
+    public void sendBatch(String receiver, List<Message> replies) {
+        if(replies.isEmpty()) {
+            return;
+        }
+        if(replies.size() == 1) {
+            unicast(receiver, replies.get(0));
+            return;
+        }
+        Message batch = new Message();
+        batch.setMethodSignature("Batch");
+        batch.setMessageType("Reply");
+        batch.setArguments(replies.toArray(new Message[replies.size()]));
+        unicast(receiver, batch);
+    }
+    /**Called by a ReplyBatch when its replies are sent, later replies to its
+     * requests are sent on their own.
+     */
+    public void removeBatch(ReplyBatch batch) {
+        for(Message request : batch.getRequests()) {
+            replyBatches.remove(batch.getReceiver()+"#"+request.getMessageNumber(), batch);
+        }
+    }
+    
+    /**sendFifo() sends a message to one member, in the order of the other
+     * messages sent to it this way, as the chunks of the state.
+     * 
+     * @param receiver member to whom the message is sent
+     * @param obj message to be sent
+     */
+    public void sendFifo(String receiver, Message obj) {
+        unicast(receiver, obj, true);
+    }
+    
+    private void unicast(String receiver, Message obj) {
+        unicast(receiver, obj, false);
+    }
+    
+    private void unicast(String receiver, Message obj, boolean fifo) {
         obj.setGroupName(groupname);
+        obj.setLoad(getInFlight(), getQueueDepth());
+        obj.setStateVersion(stateVersion.get());
         SpreadMessage replyMsg = new SpreadMessage();
         //Preparing Spread Message to sent to server.
         try {
-            replyMsg.setObject(obj);
+            replyMsg.setData(Codecs.encode(obj, getIdentifier(), groupname));
             replyMsg.addGroup(receiver);
-            replyMsg.setReliable();            
+            if(fifo) {
+                replyMsg.setFifo();
+            }
+            else {
+                replyMsg.setReliable();
+            }
         }
-        catch (SpreadException e) {
+        catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
@@ -218,20 +474,44 @@ public class ServerSideProxy implements AdvancedMessageListener{
         }      
     }
     /**sendMulticast() multicast the message in the groupname to whom
-     * message is deleivered.
+     * message is deleivered, with safe delivery.
      * 
      * @param obj message to be multicasted
      */
     
     public void sendMulticast(Serializable obj) {
-        ((Message)obj).setGroupName(groupname);
+        sendMulticast((Message) obj, Delivery.SAFE);
+    }
+    /**sendMulticast() multicast the message in the groupname with the given
+     * delivery guarantee.
+     * 
+     * @param obj message to be multicasted
+     * @param delivery Spread service type the message is sent with
+     */
+    public void sendMulticast(Message obj, Delivery delivery) {
+        obj.setGroupName(groupname);
         SpreadMessage sm = new SpreadMessage();
         try {
-            sm.setObject(obj);
+            sm.setData(Codecs.encode(obj, getIdentifier(), groupname));
             sm.addGroup(groupname);
-            sm.setSafe();            
+            switch(delivery) {
+                case RELIABLE:
+                    sm.setReliable();
+                    break;
+                case FIFO:
+                    sm.setFifo();
+                    break;
+                case CAUSAL:
+                    sm.setCausal();
+                    break;
+                case AGREED:
+                    sm.setAgreed();
+                    break;
+                default:
+                    sm.setSafe();
+            }
         }
-        catch (SpreadException e) {
+        catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
@@ -246,7 +526,8 @@ public class ServerSideProxy implements AdvancedMessageListener{
     }  
     
    /**createSkelton() creates the skelton for interfaces depends upon different 
-    * interfaces server implements.
+    * interfaces server implements, the stub generated by StubProcessor if
+    * there is one.
     * 
     * @param server of which skelton to be created
     */
@@ -275,26 +556,47 @@ public class ServerSideProxy implements AdvancedMessageListener{
             finalExternal[i]=externalInterface[i];
         } 
         ClassLoader cl = InternalGMIListener.class.getClassLoader();                
-        internal = (InternalGMIListener) Proxy.newProxyInstance(cl,  finalInternal ,internalService);
+        internal = (InternalGMIListener) Stubs.newStub(cl, finalInternal, internalService);
         ClassLoader ecl = ExternalGMIListener.class.getClassLoader();              
-        external = (ExternalGMIListener) Proxy.newProxyInstance(ecl, finalExternal ,externalService);
+        external = (ExternalGMIListener) Stubs.newStub(ecl, finalExternal, externalService);
     }
    /**notifyMerging() invokes the getGlobalState() from the leader to synchronize the global
-    * state with the newly created member or during partition merging.
+    * state with the newly created member or during partition merging. when
+    * the server is a DeltaMergingListener the other members advertise their
+    * state version instead, and the leader answers each one.
     * 
     * @param cause of invoking getGlobalState().
     */
    public void notifyMerging(String cause){	
-       if(getIdentifier().equals(leader) && getCurrentView().memberHasPosition(0, leader)) {
+       if(server instanceof DeltaMergingListener) {
+           // the leader sends each member what it is missing once it has
+           // advertised the version of its state
+           if(!isLeader()) {
+               mergingService.advertiseState(cause);
+           }
+           return;
+       }
+       if(isLeader()) {
                mergingService.getGlobalState(cause);   
        }
    }
+   
+   private boolean isLeader() {
+       return getIdentifier().equals(leader) && getCurrentView().memberHasPosition(0, leader);
+   }
    /**synchronizedView() is called after the global state is synchronized within 
     * all the members and MergingService call this method. 
     */
    public void synchronizedView(){
        membershipService.invokeMethod();
    }
+   /**
+    * @return true if the current view waits for the global state before it
+    * is given to the application
+    */
+   public boolean isViewPending(){
+       return membershipService.isPending();
+   }
    /**getInternalStub() provides application with the stub which implement the
     * given interface as parameter.
     * 
@@ -304,14 +606,85 @@ public class ServerSideProxy implements AdvancedMessageListener{
    public Object getInternalStub(Class cl) {        
        return InternalGMIListener.class.isAssignableFrom(cl)?internal:external;
     }
+   /**getAsyncInternalStub() returns a stub implementing a companion async
+    * interface of the internal interfaces. Every method of the async interface
+    * returns a <code>CompletableFuture</code> and has the same name and parameter
+    * types as an internal method, calling it multicasts the request and returns
+    * immediately, the future is completed with the array of the results.
+    * 
+    * @param asyncInterface companion async interface
+    * @return stub Object implementing asyncInterface
+    */
+   public <T> T getAsyncInternalStub(Class<T> asyncInterface) {
+       return asyncInterface.cast(Proxy.newProxyInstance(asyncInterface.getClassLoader(), new Class<?>[] { asyncInterface }, internalService));
+   }
    
    public Method[] getMethodTable(String type){
        return methodtable.getMethodTable(type);
    }
    
+   public MethodInvoker getInvoker(Method m){
+       return methodtable.getInvoker(m);
+   }
+   
    public String getMethodSignature(Method m){
        return methodtable.getNameAndDescriptor(m);
    }
+   
+   public Multicast getMulticast(String methodSignature){
+       return methodtable.getMulticast(methodSignature);
+   }
+   
+   /**
+    * @param methodSignature signature of a method of the server
+    * @return ReadOnly annotation of the method, null if it has none
+    */
+   public ReadOnly getReadOnly(String methodSignature){
+       return methodtable.getReadOnly(methodSignature);
+   }
+   
+   /**Number of requests delivered to the group, Multicast requests forwarded
+    * by a member and internal requests, which all the members receive in the
+    * same order, that this member has executed. it is sent to the clients in
+    * every message and compared with the version a client has seen for
+    * ReadOnly methods.
+    * 
+    * @return state version of this member
+    */
+   public long getStateVersion(){
+       return stateVersion.get();
+   }
+   
+   /**Called when this member has put the global state of the leader, so
+    * that its state version is not behind the one of the leader.
+    * 
+    * @param version state version of the leader when it sent the state
+    */
+   public void syncStateVersion(long version){
+       long current = stateVersion.get();
+       while(current < version && !stateVersion.compareAndSet(current, version)) {
+           current = stateVersion.get();
+       }
+       externalService.stateVersionChanged(stateVersion.get());
+   }
+   
+   /**Called when a request delivered to the group has been executed by
+    * this member, or dropped as one executed before, just before its reply
+    * is sent.
+    */
+   public void requestApplied(){
+       externalService.stateVersionChanged(stateVersion.incrementAndGet());
+   }
+   
+   /**
+    * @param methodSignature signature of a method of the server
+    * @return delivery guarantee of the requests for the method sent to the
+    * group, the one of its Multicast annotation or safe delivery
+    */
+   public Delivery getDelivery(String methodSignature){
+       Multicast multicast = methodtable.getMulticast(methodSignature);
+       return multicast == null ? Delivery.SAFE : multicast.delivery();
+   }
     
    public View getCurrentView() {
        return membershipService.getCurrentView();
@@ -331,4 +704,60 @@ public class ServerSideProxy implements AdvancedMessageListener{
    public long getStartTime(){
        return startTime;
    }
+   /**Called when the execution of an accepted external invocation starts. */
+   public void invocationStarted(){
+       inFlight.incrementAndGet();
+   }
+   /**Called when an external invocation is completed and its reply is sent. */
+   public void invocationFinished(){
+       inFlight.decrementAndGet();
+   }
+   /**Number of external invocations being executed, reported to the clients
+    * in every message sent to them as part of the load of this server.
+    */
+   public int getInFlight(){
+       return inFlight.get();
+   }
+   /**Number of accepted external invocations waiting for a worker. */
+   public int getQueueDepth(){
+       return externalService.getQueueDepth();
+   }
+   /**Sessions of the clients which sent requests to this server lately,
+    * with the number of requests each sent and has not got the reply for.
+    * 
+    * @return copies of the sessions, the least recently seen client first
+    */
+   public List<SessionTable.Session> getSessions(){
+       return sessions.getSessions();
+   }
+   /**Time in milliseconds from receiving the last membership message to
+    * having installed the view it carries, including the time it waited
+    * for the events before it.
+    * 
+    * @return latency of the last view change, -1 if there was none
+    */
+   public long getViewLatency(){
+       return viewLatency;
+   }
+   /**Replaces the limit on the number of requests of clients this server
+    * accepts at the same time. requests beyond it are answered at once with
+    * an "Overloaded" reply, on which the client sends them to another member.
+    * 
+    * @param limit new limit, new AdmissionLimit(Integer.MAX_VALUE) accepts all requests
+    */
+   public void setAdmissionLimit(AdmissionLimit limit){
+       admission = limit;
+       admitted.clear();
+       admissionOrder.clear();
+   }
+   public AdmissionLimit getAdmissionLimit(){
+       return admission;
+   }
+   /**Sets the number of worker threads which execute the external invocations
+    * and the number of invocations which can wait for each of them. the
+    * invocations of one client are executed in order by the same worker.
+    */
+   public void setWorkerPool(int threads, int queueCapacity){
+       externalService.setWorkerPool(threads, queueCapacity);
+   }
 }
@@ -0,0 +1,153 @@
+package gmi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**SessionTable keeps a session for every client which sends requests to a
+ * server: when the client was seen first and last, the number of the last
+ * request, how many requests it sent and which of them are not answered
+ * yet. A session is forgotten when the client has not been seen for the
+ * idle time, and the least recently seen one when the table is full, so the
+ * table stays small when many short lived clients come and go.
+ */
+public class SessionTable {
+
+    private final int capacity;
+    private final long idle;
+    // in the order the clients were seen last, the least recent first
+    private final LinkedHashMap<String, Session> sessions;
+
+    /**A session of one client. the table hands out copies, so a Session
+     * returned by getSessions() does not change.
+     */
+    public static class Session {
+        private final String client;
+        private final long firstSeen;
+        private long lastSeen;
+        private int lastMessageNumber, requests;
+        private HashSet<Integer> outstanding = new HashSet<Integer>();
+
+        Session(String client, long now) {
+            this.client = client;
+            firstSeen = now;
+            lastSeen = now;
+        }
+
+        Session(Session session) {
+            client = session.client;
+            firstSeen = session.firstSeen;
+            lastSeen = session.lastSeen;
+            lastMessageNumber = session.lastMessageNumber;
+            requests = session.requests;
+            outstanding = new HashSet<Integer>(session.outstanding);
+        }
+
+        /**@return private group of the client */
+        public String getClient() {
+            return client;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public int getLastMessageNumber() {
+            return lastMessageNumber;
+        }
+
+        /**@return number of requests received from the client, retries included */
+        public int getRequests() {
+            return requests;
+        }
+
+        /**@return number of requests of the client which are not answered yet */
+        public int getOutstanding() {
+            return outstanding.size();
+        }
+
+        public String toString() {
+            return client+" requests="+requests+" outstanding="+outstanding.size()
+                    +" last="+lastMessageNumber+" idle="+(System.currentTimeMillis()-lastSeen)+"ms";
+        }
+    }
+
+    /**
+     * @param capacity maximum number of sessions kept
+     * @param idle time in milliseconds after which the session of a client
+     * which has not been seen is forgotten
+     */
+    public SessionTable(int capacity, long idle) {
+        this.capacity = capacity;
+        this.idle = idle;
+        sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > SessionTable.this.capacity;
+            }
+        };
+    }
+
+    /**Called when a request is received from a client, opens its session if
+     * it has none.
+     *
+     * @param client private group of the client
+     * @param messageNumber number of the request
+     */
+    public synchronized void requestReceived(String client, int messageNumber) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        Session session = sessions.get(client);
+        if(session == null) {
+            session = new Session(client, now);
+            sessions.put(client, session);
+        }
+        session.lastSeen = now;
+        session.lastMessageNumber = messageNumber;
+        session.requests++;
+        session.outstanding.add(messageNumber);
+    }
+
+    /**Called when a reply is sent to a client. replies to a receiver without
+     * a session, as another member, are ignored.
+     *
+     * @param client private group of the client
+     * @param messageNumber number of the request which is answered
+     */
+    public synchronized void replySent(String client, int messageNumber) {
+        Session session = sessions.get(client);
+        if(session != null) {
+            session.lastSeen = System.currentTimeMillis();
+            session.outstanding.remove(messageNumber);
+        }
+    }
+
+    /**@return copies of the sessions of the clients which were seen within
+     * the idle time, the least recently seen first
+     */
+    public synchronized List<Session> getSessions() {
+        expire(System.currentTimeMillis());
+        List<Session> copies = new ArrayList<Session>(sessions.size());
+        for(Session session : sessions.values()) {
+            copies.add(new Session(session));
+        }
+        return copies;
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    private void expire(long now) {
+        Iterator<Session> i = sessions.values().iterator();
+        while(i.hasNext() && now - i.next().lastSeen > idle) {
+            i.remove();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package gmi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**StateTransfer is the global state being received chunk by chunk from one
+ * leader, see MergingService. the chunks must arrive in order and each must
+ * match its checksum. the state of a server which is not a
+ * StreamingMergingListener is read from the chunks by a thread of its own
+ * as they arrive, so at most QUEUED chunks are held besides the state being
+ * read, not all the bytes of the state.
+ */
+public class StateTransfer {
+
+    // chunks which wait to be read before add() waits for the reader
+    public static final int QUEUED = 4;
+    // marks the end of the chunks, and a transfer broken off
+    private static final byte[] END = new byte[0];
+    private static final byte[] ABORTED = new byte[0];
+
+    private final String sender;
+    private final int id;
+    // whether the state is put here or the chunks are only checked
+    private final boolean put;
+    private final boolean streaming;
+    // chunks added and not read yet, and the reader of the state, null if
+    // the state is not read here
+    private final BlockingQueue<byte[]> chunks;
+    private final FutureTask<Object> reader;
+    // number of the next chunk expected
+    private int next = 0;
+
+    /**
+     * @param sender leader which sends the state
+     * @param id number of the transfer at the leader
+     * @param put whether the state is put in this member
+     * @param streaming whether the chunks are put as they arrive
+     */
+    public StateTransfer(String sender, int id, boolean put, boolean streaming) {
+        this.sender = sender;
+        this.id = id;
+        this.put = put;
+        this.streaming = streaming;
+        if(!put || streaming) {
+            chunks = null;
+            reader = null;
+            return;
+        }
+        chunks = new ArrayBlockingQueue<byte[]>(QUEUED);
+        reader = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws IOException, ClassNotFoundException {
+                ObjectInputStream in = new ObjectInputStream(new ChunkInputStream());
+                try {
+                    return in.readObject();
+                }
+                finally {
+                    in.close();
+                }
+            }
+        });
+        Thread t = new Thread(reader, "gmi-state-" + id);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @return true if the chunk is the one expected next in this transfer
+     */
+    public boolean follows(String sender, int id, int index) {
+        return this.sender.equals(sender) && this.id == id && next == index;
+    }
+
+    /**Adds the next chunk of the transfer, it waits while QUEUED chunks
+     * have not been read yet.
+     *
+     * @param chunk chunk of the state
+     * @param checksum checksum the leader sent with the chunk
+     * @return false if the chunk does not match the checksum, it is not added
+     */
+    public boolean add(byte[] chunk, long checksum) {
+        if(checksum(chunk) != checksum) {
+            return false;
+        }
+        next++;
+        if(chunks != null && chunk.length > 0) {
+            queue(chunk);
+        }
+        return true;
+    }
+
+    private void queue(byte[] chunk) {
+        try {
+            // the reader stops on a broken state, then it takes no more chunks
+            while(!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if(reader.isDone()) {
+                    return;
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**Stops reading the state of a transfer which is broken off.
+     */
+    public void abort() {
+        if(chunks != null) {
+            chunks.clear();
+            queue(ABORTED);
+        }
+    }
+
+    public boolean isPut() {
+        return put;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**Called after the last chunk is added, waits until the state is read.
+     *
+     * @return the state read from the chunks added, null if it is not read here
+     */
+    public Object getState() throws IOException, ClassNotFoundException {
+        if(reader == null) {
+            return null;
+        }
+        queue(END);
+        try {
+            return reader.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading the state");
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if(cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return the CRC-32 checksum of a chunk
+     */
+    public static long checksum(byte[] chunk) {
+        CRC32 crc = new CRC32();
+        crc.update(chunk, 0, chunk.length);
+        return crc.getValue();
+    }
+
+    /**Reads the chunks as they are added. */
+    private class ChunkInputStream extends InputStream {
+
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+
+        private boolean fill() throws IOException {
+            while(position == chunk.length) {
+                if(chunk == END) {
+                    return false;
+                }
+                try {
+                    chunk = chunks.take();
+                }
+                catch(InterruptedException e) {
+                    throw new IOException("interrupted while reading the state");
+                }
+                if(chunk == ABORTED) {
+                    throw new IOException("state transfer broken off");
+                }
+                position = 0;
+            }
+            return true;
+        }
+
+        public int read() throws IOException {
+            if(!fill()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+            if(!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package gmi;
+
+/**
+ * StreamingMergingListener is implemented instead of MergingListener by
+ * servers with a large state. the leader takes the state chunk by chunk from
+ * getStateChunk() and the other members put it chunk by chunk with
+ * putStateChunk(), so neither has to hold the whole state as one object and
+ * the state is not limited by the size of a Spread message. getState() and
+ * putState() are not used for the transfer.
+ */
+public interface StreamingMergingListener extends MergingListener {
+
+  /**
+   *  Method <code>getStateChunk</code> is invoked in the leader for the
+   *  chunks of the state in order, starting at 0, until it returns null.
+   *  the chunks must all belong to the state as it was when chunk 0 was
+   *  taken.
+   *
+   *  @param index
+   *    The number of the chunk
+   *  @return
+   *    The chunk, at most MergingService.CHUNK_SIZE bytes are advised, or
+   *    null if there are no more chunks
+   */
+  public byte[] getStateChunk(int index);
+
+  /**
+   *  Method <code>putStateChunk</code> is invoked with the chunks of the
+   *  state of the leader in order. chunk 0 starts a new state, replacing
+   *  the one which was being put if its transfer was broken off.
+   *
+   *  @param chunk
+   *    The chunk
+   *  @param index
+   *    The number of the chunk
+   *  @param last
+   *    True for the last chunk of the state
+   */
+  public void putStateChunk(byte[] chunk, int index, boolean last);
+}
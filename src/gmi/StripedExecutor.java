@@ -0,0 +1,79 @@
+package gmi;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**StripedExecutor runs tasks on a fixed number of serial lanes, each with
+ * one thread and a bounded queue. A task is put on the lane its key hashes
+ * to, so the tasks with the same key run one after another in the order
+ * they were submitted, while tasks with different keys run in parallel on
+ * the other lanes. A slow task delays the tasks queued behind it on its
+ * lane, also those of other keys which hash to the same lane.
+ */
+public class StripedExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+
+    /**
+     * @param name prefix of the names of the lane threads
+     * @param laneCount number of lanes
+     * @param laneCapacity number of tasks which can wait in each lane
+     */
+    public StripedExecutor(final String name, int laneCount, int laneCapacity) {
+        lanes = new ThreadPoolExecutor[laneCount];
+        for(int i = 0; i < laneCount; i++) {
+            final String laneName = name + "-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(laneCapacity), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, laneName);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            // an idle lane keeps no thread
+            lanes[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**Runs the task after the tasks submitted before with the same key.
+     *
+     * @param key key which orders the task, may be null
+     * @param task task to run
+     * @throws RejectedExecutionException if the queue of the lane is full
+     */
+    public void execute(Object key, Runnable task) {
+        lanes[laneOf(key)].execute(task);
+    }
+
+    private int laneOf(Object key) {
+        if(key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        // spread the bits, as HashMap does, before taking the remainder
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * @return number of tasks waiting in all lanes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for(ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**Stops taking tasks, the tasks already submitted are still run. */
+    public void shutdown() {
+        for(ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
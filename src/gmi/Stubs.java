@@ -0,0 +1,68 @@
+package gmi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**Stubs finds the classes which StubProcessor has generated at compile time
+ * for a GMI interface: the stub, named after the interface with the suffix
+ * STUB, and the dispatcher, with the suffix DISPATCHER. When they are not
+ * there, because the application was compiled without the processor, a
+ * java.lang.reflect.Proxy is created and the methods are invoked
+ * reflectively, as before.
+ */
+public class Stubs {
+
+    public static final String STUB = "_GmiStub";
+    public static final String DISPATCHER = "_GmiDispatcher";
+
+    private Stubs() { }
+
+    /**Creates a stub which implements the interfaces and hands every call
+     * to the handler.
+     *
+     * @param cl class loader for the proxy, if one is created
+     * @param interfaces interfaces the stub implements
+     * @param handler handler of the calls
+     * @return generated stub if there is one for the interface, otherwise a proxy
+     */
+    public static Object newStub(ClassLoader cl, Class<?>[] interfaces, InvocationHandler handler) {
+        if(interfaces.length == 1) {
+            Class<?> stub = find(interfaces[0], STUB);
+            if(stub != null) {
+                try {
+                    return stub.getConstructor(InvocationHandler.class).newInstance(handler);
+                }
+                catch(Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return Proxy.newProxyInstance(cl, interfaces, handler);
+    }
+
+    /**
+     * @param iface GMI interface
+     * @return dispatcher generated for the interface, or null if there is none
+     */
+    public static Dispatcher getDispatcher(Class<?> iface) {
+        Class<?> dispatcher = find(iface, DISPATCHER);
+        if(dispatcher != null) {
+            try {
+                return (Dispatcher) dispatcher.getDeclaredConstructor().newInstance();
+            }
+            catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    private static Class<?> find(Class<?> iface, String suffix) {
+        try {
+            return Class.forName(iface.getName() + suffix, true, iface.getClassLoader());
+        }
+        catch(ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -1,62 +1,44 @@
-
 package gmi;
-import spread.*;
 
 /**TomeOut Object is used to set the timer when GroupProxy sends the message
  * to serversideproxy and if it receives the reply with in specified time which
- * is currently set to 1 sec then it do nothing and if groupproxy doen't receive
+ * is derived from the round trip time of the server then it do nothing and if groupproxy doen't receive
  * reply with in time limit it specify timeout or grouptimeout depending upon
- * the message is sent to one server or group.
+ * the message is sent to one server or group. It is scheduled on the
+ * TimerService and cancelled by GroupProxy when the acknowledgement arrives.
  * @author Gurvinder Singh
  */
 
-public class TimeOut extends Thread {
+public class TimeOut implements Runnable {
 
+    // time to wait for the acknowledgement in milliseconds until the
+    // round trip time of the server has been measured
+    public static final long DELAY = 1000;
     private GroupProxy proxy;   
     private String sender;
-    private SpreadMessage msg;
-    private Object obj;
-    boolean group, acknowledge;
-    private Boolean ack;
+    private Message msg;
+    boolean group;
     private final boolean DEBUG = false;
     
-    public TimeOut(GroupProxy proxy, String sender, SpreadMessage msg, boolean group) {
+    public TimeOut(GroupProxy proxy, String sender, Message msg, boolean group) {
        this.proxy = proxy;       
        this.msg =  msg;   
        this.sender = sender;
        this.group = group;
     }  
-    @Override
+    
     public void run() {
-        try {
-            Thread.sleep(1000);
-        }
-        catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        try {
-            obj = msg.getObject();            
-        }
-        catch (SpreadException e) {
-            e.printStackTrace();
-        }
-        
-        if(obj instanceof Message) {                     
-            ack = (Boolean)proxy.getAck().get(((Message)obj).getMessageNumber());          
-        }
-        
-        acknowledge = ack.booleanValue();
-        if(!acknowledge) {
+        if(!proxy.isAcknowledged(msg.getMessageNumber())) {
             
             if(group) {
-                proxy.groupTimeOut();
+                proxy.groupTimeOut(msg);
             }
             else {                
                 if(DEBUG) {
                     System.out.println("Timeout due to server::"+sender);
-                    System.out.println("timeout for "+((Message)obj).getMessageNumber()+" which is "+proxy.getAck().get(((Message)obj).getMessageNumber()));
+                    System.out.println("timeout for "+msg.getMessageNumber());
                 }                
-                proxy.timeOut(sender, obj);
+                proxy.timeOut(sender, msg);
             
             }
         }
@@ -0,0 +1,54 @@
+package gmi;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**TimerService is the single scheduler which runs all the timeouts of the
+ * GMI package, the request and result timeouts of GroupProxy as well as the
+ * ExternalInvocationTimer of the server side. A timeout is scheduled when a
+ * message is sent and cancelled when its acknowledgement arrives, so no
+ * thread is created or parked per message.
+ */
+public class TimerService {
+
+    private static final ScheduledThreadPoolExecutor scheduler = createScheduler();
+
+    private TimerService() { }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, new ThreadFactory() {
+            private int count = 0;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "gmi-timer-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // cancelled timeouts are removed at once instead of when they expire
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**Schedules a task to run once after the given delay.
+     *
+     * @param task task to run
+     * @param delay delay in milliseconds
+     * @return handle which is used to cancel the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**Cancels a scheduled task, the handle may be null.
+     *
+     * @param timer handle returned by schedule()
+     */
+    public static void cancel(ScheduledFuture<?> timer) {
+        if(timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+}
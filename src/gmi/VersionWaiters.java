@@ -0,0 +1,102 @@
+package gmi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**VersionWaiters holds the tasks which must not run before the state
+ * version of this member has reached a given version, as the ReadOnly
+ * requests of a client which has seen a newer state than this member has
+ * applied. a task runs as soon as the version is reached, or its expired
+ * task runs instead if that takes longer than the timeout.
+ */
+public class VersionWaiters {
+
+    private final long timeout;
+    private final List<Waiter> waiters = new ArrayList<Waiter>();
+    // highest state version given to advance()
+    private long version = 0;
+
+    /**
+     * @param timeout time in milliseconds a task waits for its version
+     */
+    public VersionWaiters(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**Runs the task once the state version is at least needed, at once if
+     * it is already.
+     *
+     * @param needed state version the task needs
+     * @param task task to run when the version is reached
+     * @param expired task to run instead if the version is not reached within the timeout
+     */
+    public void await(long needed, Runnable task, final Runnable expired) {
+        final Waiter waiter;
+        synchronized(this) {
+            if(needed > version) {
+                waiter = new Waiter(needed, task);
+                waiters.add(waiter);
+                waiter.timer = TimerService.schedule(new Runnable() {
+                    public void run() {
+                        if(remove(waiter)) {
+                            expired.run();
+                        }
+                    }
+                }, timeout);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**Called when the state version has changed, runs the tasks which were
+     * waiting for it.
+     *
+     * @param current state version of this member
+     */
+    public void advance(long current) {
+        List<Waiter> ready = new ArrayList<Waiter>();
+        synchronized(this) {
+            if(current <= version) {
+                return;
+            }
+            version = current;
+            Iterator<Waiter> i = waiters.iterator();
+            while(i.hasNext()) {
+                Waiter waiter = i.next();
+                if(waiter.needed <= current) {
+                    i.remove();
+                    ready.add(waiter);
+                }
+            }
+        }
+        for(Waiter waiter : ready) {
+            TimerService.cancel(waiter.timer);
+            waiter.task.run();
+        }
+    }
+
+    /**
+     * @return number of tasks waiting
+     */
+    public synchronized int size() {
+        return waiters.size();
+    }
+
+    private synchronized boolean remove(Waiter waiter) {
+        return waiters.remove(waiter);
+    }
+
+    private static class Waiter {
+        final long needed;
+        final Runnable task;
+        ScheduledFuture<?> timer;
+
+        Waiter(long needed, Runnable task) {
+            this.needed = needed;
+            this.task = task;
+        }
+    }
+}
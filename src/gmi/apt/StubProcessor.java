@@ -0,0 +1,430 @@
+package gmi.apt;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**StubProcessor generates, at compile time, the classes through which GMI
+ * calls the methods of the interfaces extending ExternalGMIListener or
+ * InternalGMIListener, so that no java.lang.reflect.Proxy has to be
+ * created and no method has to be invoked reflectively at run time:
+ *
+ * <ul>
+ * <li><i>Interface</i>_GmiStub implements the interface and hands every
+ * call to the InvocationHandler it is created with, it is used instead of
+ * a proxy for the client stub and the server skeleton.</li>
+ * <li><i>Interface</i>_GmiDispatcher implements gmi.Dispatcher, it lists
+ * the methods of the interface and calls them on the server directly, the
+ * MethodTable of the server is built from it.</li>
+ * </ul>
+ *
+ * MembershipListener, MergingListener and the interfaces extending them
+ * only get a dispatcher, they are never called through a stub. The
+ * generated code compiles without warnings under -Xlint.
+ *
+ * Interfaces with type parameters are skipped, they keep being handled
+ * reflectively. The processor is run with
+ * <code>javac -processor gmi.apt.StubProcessor</code>, see build.xml.
+ */
+@SupportedAnnotationTypes("*")
+public class StubProcessor extends AbstractProcessor {
+
+    // interfaces extending these get a stub and a dispatcher
+    private static final String[] LISTENERS = { "gmi.ExternalGMIListener", "gmi.InternalGMIListener" };
+    // these and the interfaces extending them get a dispatcher
+    private static final String[] CALLBACKS = { "gmi.MembershipListener", "gmi.MergingListener" };
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        List<TypeElement> listeners = getTypes(LISTENERS);
+        List<TypeElement> callbacks = getTypes(CALLBACKS);
+        if(listeners.isEmpty() && callbacks.isEmpty()) {
+            return false;
+        }
+        List<TypeElement> types = new ArrayList<TypeElement>();
+        collectTypes(ElementFilter.typesIn(roundEnv.getRootElements()), types);
+        for(TypeElement type : types) {
+            if(type.getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            if(isGMIInterface(type, listeners)) {
+                generate(type, true);
+            }
+            else if(callbacks.contains(type) || isGMIInterface(type, callbacks)) {
+                generate(type, false);
+            }
+        }
+        return false;
+    }
+
+    private List<TypeElement> getTypes(String[] names) {
+        List<TypeElement> types = new ArrayList<TypeElement>();
+        for(String name : names) {
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(name);
+            if(type != null) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    private void collectTypes(Iterable<TypeElement> elements, List<TypeElement> types) {
+        for(TypeElement type : elements) {
+            types.add(type);
+            collectTypes(ElementFilter.typesIn(type.getEnclosedElements()), types);
+        }
+    }
+
+    private boolean isGMIInterface(TypeElement type, List<TypeElement> listeners) {
+        for(TypeElement listener : listeners) {
+            if(!type.equals(listener) && processingEnv.getTypeUtils().isAssignable(
+                    processingEnv.getTypeUtils().erasure(type.asType()),
+                    processingEnv.getTypeUtils().erasure(listener.asType()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement type, boolean stub) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for(ExecutableElement m : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if(m.getEnclosingElement().getKind() != ElementKind.INTERFACE || m.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            if(!m.getTypeParameters().isEmpty()) {
+                note(type, "method "+m.getSimpleName()+" has type parameters, no stub generated");
+                return;
+            }
+            methods.add(m);
+        }
+        if(!type.getTypeParameters().isEmpty()) {
+            note(type, "interface has type parameters, no stub generated");
+            return;
+        }
+        String packageName = ((PackageElement) processingEnv.getElementUtils().getPackageOf(type)).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        String interfaceName = type.getQualifiedName().toString();
+        try {
+            if(stub) {
+                writeStub(type, packageName, simpleName + "_GmiStub", interfaceName, methods);
+            }
+            writeDispatcher(type, packageName, simpleName + "_GmiDispatcher", interfaceName, methods);
+        }
+        catch(IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write GMI stub: "+e, type);
+        }
+    }
+
+    private void writeStub(TypeElement type, String packageName, String className, String interfaceName,
+            List<ExecutableElement> methods) throws IOException {
+        PrintWriter out = open(type, packageName, className);
+        out.println("public final class "+className+" implements "+interfaceName+" {");
+        out.println();
+        out.println("    private static final long serialVersionUID = 1L;");
+        writeMethods(out, interfaceName, methods);
+        out.println();
+        out.println("    private final java.lang.reflect.InvocationHandler handler;");
+        out.println();
+        out.println("    public "+className+"(java.lang.reflect.InvocationHandler handler) {");
+        out.println("        this.handler = handler;");
+        out.println("    }");
+        for(int i = 0; i < methods.size(); i++) {
+            ExecutableElement m = methods.get(i);
+            List<String> thrown = new ArrayList<String>();
+            boolean throwsThrowable = collectThrown(m, thrown);
+            out.println();
+            TypeMirror returnType = m.getReturnType();
+            if(isUnchecked(returnType)) {
+                out.println("    @SuppressWarnings(\"unchecked\")");
+            }
+            out.print("    public "+sourceName(returnType)+" "+m.getSimpleName()+"(");
+            StringBuilder args = new StringBuilder();
+            for(int j = 0; j < m.getParameters().size(); j++) {
+                String parameter = sourceName(m.getParameters().get(j).asType());
+                if(m.isVarArgs() && j == m.getParameters().size() - 1) {
+                    parameter = parameter.substring(0, parameter.length() - 2) + "...";
+                }
+                out.print((j > 0 ? ", " : "")+parameter+" a"+j);
+                args.append(j > 0 ? ", " : "").append("a").append(j);
+            }
+            out.print(")");
+            if(throwsThrowable) {
+                out.print(" throws Throwable");
+            }
+            else if(!thrown.isEmpty()) {
+                out.print(" throws "+join(thrown));
+            }
+            out.println(" {");
+            String call = "handler.invoke(this, METHODS["+i+"], "
+                    +(m.getParameters().isEmpty() ? "null" : "new Object[] { "+args+" }")+")";
+            String indent = throwsThrowable ? "        " : "            ";
+            if(!throwsThrowable) {
+                out.println("        try {");
+            }
+            if(returnType.getKind() == TypeKind.VOID) {
+                out.println(indent+call+";");
+            }
+            else if(returnType.getKind().isPrimitive()) {
+                out.println(indent+"return ("+boxedName(returnType)+") "+call+";");
+            }
+            else if(isObject(returnType)) {
+                out.println(indent+"return "+call+";");
+            }
+            else {
+                out.println(indent+"return ("+sourceName(returnType)+") "+call+";");
+            }
+            if(!throwsThrowable) {
+                out.println("        }");
+                out.println("        catch(RuntimeException e) {");
+                out.println("            throw e;");
+                out.println("        }");
+                out.println("        catch(Error e) {");
+                out.println("            throw e;");
+                out.println("        }");
+                for(String exception : thrown) {
+                    out.println("        catch("+exception+" e) {");
+                    out.println("            throw e;");
+                    out.println("        }");
+                }
+                out.println("        catch(Throwable e) {");
+                out.println("            throw new java.lang.reflect.UndeclaredThrowableException(e);");
+                out.println("        }");
+            }
+            out.println("    }");
+        }
+        out.println("}");
+        out.close();
+    }
+
+    private void writeDispatcher(TypeElement type, String packageName, String className, String interfaceName,
+            List<ExecutableElement> methods) throws IOException {
+        PrintWriter out = open(type, packageName, className);
+        out.println("public final class "+className+" implements gmi.Dispatcher {");
+        writeMethods(out, interfaceName, methods);
+        out.println();
+        out.println("    private static final String[] SIGNATURES = {");
+        for(ExecutableElement m : methods) {
+            out.println("        \""+signature(m)+"\",");
+        }
+        out.println("    };");
+        out.println();
+        out.println("    public String[] getSignatures() {");
+        out.println("        return SIGNATURES.clone();");
+        out.println("    }");
+        out.println();
+        out.println("    public java.lang.reflect.Method[] getMethods() {");
+        out.println("        return METHODS.clone();");
+        out.println("    }");
+        out.println();
+        boolean unchecked = false;
+        for(ExecutableElement m : methods) {
+            for(VariableElement p : m.getParameters()) {
+                unchecked |= isUnchecked(p.asType());
+            }
+        }
+        if(unchecked) {
+            out.println("    @SuppressWarnings(\"unchecked\")");
+        }
+        out.println("    public Object dispatch(int index, Object target, Object[] args) throws Throwable {");
+        out.println("        "+interfaceName+" t = ("+interfaceName+") target;");
+        out.println("        switch(index) {");
+        for(int i = 0; i < methods.size(); i++) {
+            ExecutableElement m = methods.get(i);
+            StringBuilder args = new StringBuilder();
+            for(int j = 0; j < m.getParameters().size(); j++) {
+                TypeMirror p = m.getParameters().get(j).asType();
+                args.append(j > 0 ? ", " : "");
+                if(!isObject(p)) {
+                    args.append("(").append(p.getKind().isPrimitive() ? boxedName(p) : sourceName(p)).append(") ");
+                }
+                args.append("args[").append(j).append("]");
+            }
+            String call = "t."+m.getSimpleName()+"("+args+")";
+            if(m.getReturnType().getKind() == TypeKind.VOID) {
+                out.println("            case "+i+": "+call+"; return null;");
+            }
+            else {
+                out.println("            case "+i+": return "+call+";");
+            }
+        }
+        out.println("        }");
+        out.println("        throw new IllegalArgumentException(\"No method with index \"+index);");
+        out.println("    }");
+        out.println("}");
+        out.close();
+    }
+
+    /**Writes the METHODS array, the methods of the interface in the order
+     * of their indexes, resolved once when the class is loaded.
+     */
+    private void writeMethods(PrintWriter out, String interfaceName, List<ExecutableElement> methods) {
+        out.println();
+        out.println("    private static final java.lang.reflect.Method[] METHODS;");
+        out.println("    static {");
+        out.println("        try {");
+        out.println("            METHODS = new java.lang.reflect.Method[] {");
+        for(ExecutableElement m : methods) {
+            StringBuilder parameters = new StringBuilder();
+            for(VariableElement p : m.getParameters()) {
+                parameters.append(", ").append(typeName(p.asType())).append(".class");
+            }
+            out.println("                "+interfaceName+".class.getMethod(\""+m.getSimpleName()+"\""+parameters+"),");
+        }
+        out.println("            };");
+        out.println("        }");
+        out.println("        catch(NoSuchMethodException e) {");
+        out.println("            throw new ExceptionInInitializerError(e);");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    private PrintWriter open(TypeElement type, String packageName, String className) throws IOException {
+        String name = packageName.isEmpty() ? className : packageName + "." + className;
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(name, type).openWriter());
+        if(!packageName.isEmpty()) {
+            out.println("package "+packageName+";");
+            out.println();
+        }
+        out.println("/** Generated by gmi.apt.StubProcessor from "+type.getQualifiedName()+", do not edit. */");
+        return out;
+    }
+
+    /**Collects the checked exceptions the method declares, leaving out those
+     * which are subclasses of another one, so that they can be caught in
+     * order.
+     *
+     * @return true if the method declares Throwable
+     */
+    private boolean collectThrown(ExecutableElement m, List<String> thrown) {
+        TypeMirror throwable = processingEnv.getElementUtils().getTypeElement("java.lang.Throwable").asType();
+        TypeMirror unchecked = processingEnv.getElementUtils().getTypeElement("java.lang.RuntimeException").asType();
+        TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType();
+        for(TypeMirror t : m.getThrownTypes()) {
+            if(processingEnv.getTypeUtils().isSameType(t, throwable)) {
+                return true;
+            }
+        }
+        for(TypeMirror t : m.getThrownTypes()) {
+            if(processingEnv.getTypeUtils().isSubtype(t, unchecked) || processingEnv.getTypeUtils().isSubtype(t, error)) {
+                continue;
+            }
+            boolean covered = false;
+            for(TypeMirror other : m.getThrownTypes()) {
+                if(!processingEnv.getTypeUtils().isSameType(t, other) && processingEnv.getTypeUtils().isSubtype(t, other)) {
+                    covered = true;
+                }
+            }
+            if(!covered) {
+                thrown.add(typeName(t));
+            }
+        }
+        return false;
+    }
+
+    /**Signature of the method in the form of MethodTable.getNameAndDescriptor(). */
+    private String signature(ExecutableElement m) {
+        StringBuilder desc = new StringBuilder();
+        desc.append(descriptor(m.getReturnType()));
+        desc.append(m.getSimpleName());
+        if(m.getParameters().isEmpty()) {
+            desc.append("void");
+        }
+        for(VariableElement p : m.getParameters()) {
+            desc.append(descriptor(p.asType()));
+        }
+        return desc.toString();
+    }
+
+    private String descriptor(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if(erased.getKind().isPrimitive() || erased.getKind() == TypeKind.VOID) {
+            return erased.getKind().name().toLowerCase();
+        }
+        if(erased.getKind() == TypeKind.ARRAY) {
+            return "array";
+        }
+        Element element = processingEnv.getTypeUtils().asElement(erased);
+        return element.getSimpleName().toString();
+    }
+
+    /**Erased name of the type, for class literals. */
+    private String typeName(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    /**Name of the type with its type arguments, for declarations and casts. */
+    private String sourceName(TypeMirror type) {
+        return type.toString();
+    }
+
+    private boolean isObject(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && type.toString().equals("java.lang.Object");
+    }
+
+    /**
+     * @return true if a cast from Object to the type is unchecked, because
+     * it has type arguments which are not all unbounded wildcards
+     */
+    private boolean isUnchecked(TypeMirror type) {
+        if(type.getKind() == TypeKind.ARRAY) {
+            return isUnchecked(((ArrayType) type).getComponentType());
+        }
+        if(type.getKind() == TypeKind.TYPEVAR) {
+            return true;
+        }
+        if(type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        for(TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+            if(argument.getKind() != TypeKind.WILDCARD
+                    || ((WildcardType) argument).getExtendsBound() != null
+                    || ((WildcardType) argument).getSuperBound() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String boxedName(TypeMirror primitive) {
+        return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(primitive.getKind())).getQualifiedName().toString();
+    }
+
+    private static String join(List<String> names) {
+        StringBuilder joined = new StringBuilder();
+        for(String name : names) {
+            joined.append(joined.length() > 0 ? ", " : "").append(name);
+        }
+        return joined.toString();
+    }
+
+    private void note(TypeElement type, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, type);
+    }
+}
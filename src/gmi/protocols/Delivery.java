@@ -0,0 +1,19 @@
+package gmi.protocols;
+
+/**
+ * Delivery guarantee of the Spread messages which carry the requests of a
+ * Multicast method to the members of the group, from the cheapest to the
+ * most expensive. the replies and Anycast requests are sent reliable.
+ */
+public enum Delivery {
+    /** delivered to every member, in no particular order */
+    RELIABLE,
+    /** delivered in the order they were sent by each member */
+    FIFO,
+    /** delivered in an order which respects causality */
+    CAUSAL,
+    /** delivered in the same order to every member */
+    AGREED,
+    /** delivered in the same order, and only once every member has received it */
+    SAFE
+}
@@ -0,0 +1,28 @@
+package gmi.protocols;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for methods which can be executed more than once for the
+ * same request without harm. It is placed on the method in the external
+ * interface. GroupProxy hedges the requests for such a method: if the
+ * reply has not arrived when the request has been outstanding longer than
+ * the given percentile of the latencies observed for the method, a copy is
+ * sent to another server and the first reply is taken. It should only be
+ * used on Anycast methods.
+ */
+
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {
+
+    /** percentile of the observed latencies after which a copy is sent */
+    double percentile() default 95;
+}
@@ -13,8 +13,13 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- *Marker Annotation for Specifying Multicast Protocol
+ *Annotation for Specifying Multicast Protocol
  *by application and used by ExternalGMIService to handle invocation. 
+ *the request is executed by every member and the client gets the reply
+ *once the given replies are in, the replies of the other members are
+ *dropped when they arrive.
+ *on the implementation of an internal method, which is always executed by
+ *every member, only delivery is used.
  * @author Gurvinder Singh
  */
 
@@ -24,4 +29,25 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface Multicast {
 
+    /**Replies the client waits for. */
+    enum Replies {
+        /** the replies of all the members */
+        ALL,
+        /** the replies of more than half of the members */
+        MAJORITY,
+        /** the first reply which is not an exception */
+        FIRST,
+        /** the replies of k members */
+        K
+    }
+
+    /** replies after which the client is answered */
+    Replies replies() default Replies.ALL;
+
+    /** number of replies waited for with Replies.K */
+    int k() default 1;
+
+    /** delivery guarantee of the requests sent to the members, Delivery.AGREED
+     * is enough for requests which only have to be executed in the same order */
+    Delivery delivery() default Delivery.SAFE;
 }
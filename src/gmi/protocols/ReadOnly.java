@@ -0,0 +1,33 @@
+package gmi.protocols;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for external methods which only read the replicated state
+ * every member holds. It is placed on the method of the server like the
+ * protocol annotations. the request is executed by the member which
+ * receives it, also for a Multicast method, without sending it to the
+ * group or waiting for the results of the other members.
+ * 
+ * every member counts the requests delivered to the group which it has
+ * executed, its state version, and the client sends with every request the
+ * highest version it has seen in a reply. with maxLag the member executes
+ * the request only once it is at most maxLag requests behind that version.
+ * it waits for that at most ExternalGMIService.READ_WAIT milliseconds, then
+ * the client is told to send the request to another member.
+ */
+
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadOnly {
+
+    /** number of group requests the member may be behind the client, -1 for any */
+    long maxLag() default -1;
+}
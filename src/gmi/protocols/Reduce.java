@@ -0,0 +1,54 @@
+package gmi.protocols;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.function.BinaryOperator;
+
+/**
+ * Annotation for methods of an internal interface whose results are reduced
+ * to one value. It is placed on the method in the internal interface. the
+ * invocation returns the reduced value instead of the array of the results
+ * of the members, and it returns as soon as the value is decided, without
+ * waiting for the other members. results which are exceptions are left out.
+ */
+
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Reduce {
+
+    /**How the results are reduced. */
+    enum Function {
+        /** Boolean.TRUE if a member returns Boolean.TRUE, decided by the first one */
+        ANY_TRUE,
+        /** the first result which is not null, decided by it */
+        FIRST_NON_NULL,
+        /** the sum of the numbers returned, as a Long if they are all integers */
+        SUM,
+        /** the least of the results, which must be Comparable */
+        MIN,
+        /** the greatest of the results, which must be Comparable */
+        MAX,
+        /** the results combined by operator() */
+        CUSTOM
+    }
+
+    /** function reducing the results */
+    Function value();
+
+    /** operator combining two results with Function.CUSTOM, it needs a
+     * constructor without arguments */
+    Class<? extends BinaryOperator<?>> operator() default NoOperator.class;
+
+    /** default of operator(), no operator is given */
+    final class NoOperator implements BinaryOperator<Object> {
+        public Object apply(Object a, Object b) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package gmi.protocols;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for Anycast methods which must not be executed twice for the
+ * same request even when the server executing it fails. It is placed on
+ * the method in the external interface. The reply to every request of such
+ * a method is also multicast to the other members of the group, which
+ * cache it, so a client which sends the request again to another server
+ * gets the reply instead of executing it again. This costs one more
+ * multicast to the group for each request, so it should only be used where
+ * executing a request twice does harm.
+ */
+
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReplicateReply {
+
+}
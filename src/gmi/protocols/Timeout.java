@@ -0,0 +1,29 @@
+package gmi.protocols;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for overriding the timeouts GroupProxy uses for a method,
+ * which are otherwise derived from the measured round trip times of the
+ * servers. It is placed on the method in the external interface, since
+ * that is what the client sees. Values are in milliseconds, a value of 0
+ * keeps the measured timeout.
+ */
+
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Timeout {
+
+    /** time to wait for the acknowledgement of the request */
+    long ack() default 0;
+
+    /** time to wait for the result of the request */
+    long result() default 0;
+}
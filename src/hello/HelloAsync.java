@@ -0,0 +1,12 @@
+package hello;
+
+import java.util.concurrent.CompletableFuture;
+
+/**Companion async view of Hello, used through GroupProxy.getAsyncServer()
+ * to have many requests outstanding at once.
+ */
+public interface HelloAsync {
+    
+   CompletableFuture<Answer> sayhello(String s);
+
+}
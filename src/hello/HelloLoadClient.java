@@ -0,0 +1,102 @@
+package hello;
+
+import gmi.GroupProxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Load client for Hello, measures how long a number of calls made at the
+ *  same time take: first from a pool of threads each making calls, then
+ *  through HelloAsync with all the calls outstanding at once. Run it
+ *  against a few HelloServers.
+ */
+
+public class HelloLoadClient {
+
+    private String groupname = "servergroup";
+    private GroupProxy groupProxy;
+    private String address = "localhost";
+    
+    public HelloLoadClient(String name, int port, int calls, int threads) throws Exception {
+        groupProxy = new GroupProxy(this, name, port, groupname, address); 
+        final Hello server = (Hello) groupProxy.getServer();    
+        // the first call is not measured, it sets up the connection
+        server.sayhello("Hi");
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Answer>> answers = new ArrayList<Future<Answer>>();
+        long start = System.currentTimeMillis();
+        for(int i=0; i<calls; i++){            
+            answers.add(pool.submit(new Callable<Answer>() {
+                public Answer call() {
+                    return server.sayhello("Hi");
+                }
+            }));
+        }
+        int answered = 0;
+        for(Future<Answer> answer : answers){
+            if(answer.get(60, TimeUnit.SECONDS) != null) {
+                answered++;
+            }
+        }
+        System.out.println(calls+" calls from "+threads+" threads: "+answered+" answered in "+(System.currentTimeMillis()-start)+" ms");
+        pool.shutdown();
+        
+        HelloAsync async = groupProxy.getAsyncServer(HelloAsync.class);
+        List<CompletableFuture<Answer>> futures = new ArrayList<CompletableFuture<Answer>>();
+        start = System.currentTimeMillis();
+        for(int i=0; i<calls; i++){            
+            futures.add(async.sayhello("Hi"));
+        }
+        answered = 0;
+        for(CompletableFuture<Answer> future : futures){
+            if(future.get(60, TimeUnit.SECONDS) != null) {
+                answered++;
+            }
+        }
+        System.out.println(calls+" async calls: "+answered+" answered in "+(System.currentTimeMillis()-start)+" ms");
+        System.exit(0);
+    }        
+    
+    public static void main(String[] arg) {
+        String connName = null;
+        int port = 0, calls = 200, threads = 20;
+        try {
+            for (int i = 0 ; i < arg.length ; i += 2) {
+         	   if (arg[i].equals("-c")) {
+         		   connName = arg[i+1];
+         	   } else if (arg[i].equals("-p")) {
+         		   port = Integer.parseInt(arg[i+1]);
+         	   } else if (arg[i].equals("-n")) {
+         		   calls = Integer.parseInt(arg[i+1]);
+         	   } else if (arg[i].equals("-t")) {
+         		   threads = Integer.parseInt(arg[i+1]);
+         	   } else {
+         		   usage();
+         	   }
+            }
+        }
+        catch (Exception e) {
+     	   usage();
+        }
+        try {
+            new HelloLoadClient(connName, port, calls, threads);                    
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }    
+
+    private static void usage() {
+    	System.out.println("Usage Client :: HelloLoadClient -c <clientname> -p <port> [-n <calls>] [-t <threads>]");
+    	System.exit(1);
+    }
+
+}
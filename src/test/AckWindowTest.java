@@ -0,0 +1,88 @@
+package test;
+
+import gmi.AckWindow;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class AckWindowTest extends TestCase {
+
+	public void testNumbers() {
+		AckWindow window = new AckWindow(4);
+		assertEquals(0, window.acquire());
+		assertEquals(1, window.acquire());
+		assertEquals(2, window.tryAcquire());
+		assertEquals(3, window.getOutstanding());
+	}
+
+	public void testAcknowledge() {
+		AckWindow window = new AckWindow(4);
+		int number = window.acquire();
+		assertFalse(window.isAcknowledged(number));
+		window.acknowledge(number);
+		assertTrue(window.isAcknowledged(number));
+		assertFalse(window.isCompleted(number));
+		window.retransmit(number);
+		assertFalse(window.isAcknowledged(number));
+	}
+
+	public void testComplete() {
+		AckWindow window = new AckWindow(4);
+		int number = window.acquire();
+		window.complete(number);
+		assertTrue(window.isCompleted(number));
+		// a recycled slot reports the old message as acknowledged
+		assertTrue(window.isAcknowledged(number));
+		assertEquals(0, window.getOutstanding());
+	}
+
+	public void testTryAcquireFull() {
+		AckWindow window = new AckWindow(2);
+		int first = window.acquire();
+		window.acquire();
+		assertEquals(-1, window.tryAcquire());
+		window.complete(first);
+		assertEquals(2, window.tryAcquire());
+	}
+
+	public void testAcquireWaitsForSlot() throws Exception {
+		final AckWindow window = new AckWindow(2);
+		final int first = window.acquire();
+		window.acquire();
+		Thread completer = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				}
+				catch(InterruptedException e) {
+				}
+				window.complete(first);
+			}
+		};
+		completer.start();
+		long start = System.currentTimeMillis();
+		assertEquals(2, window.acquire());
+		assertTrue(System.currentTimeMillis() - start >= 40);
+		completer.join();
+	}
+
+	public void testOldNumberDoesNotTouchNewMessage() {
+		AckWindow window = new AckWindow(2);
+		int old = window.acquire();
+		window.complete(old);
+		window.acquire();
+		int reused = window.acquire();
+		assertEquals(old & 1, reused & 1);
+		window.acknowledge(old);
+		window.complete(old);
+		assertFalse(window.isAcknowledged(reused));
+		assertFalse(window.isCompleted(reused));
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the acknowledgement window");
+		suite.addTestSuite(AckWindowTest.class);
+		return suite;
+	}
+
+}
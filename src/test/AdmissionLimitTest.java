@@ -0,0 +1,67 @@
+package test;
+
+import gmi.AdmissionLimit;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class AdmissionLimitTest extends TestCase {
+
+	public void testFixedLimit() {
+		AdmissionLimit limit = new AdmissionLimit(2);
+		assertTrue(limit.tryAcquire());
+		assertTrue(limit.tryAcquire());
+		assertFalse(limit.tryAcquire());
+		assertEquals(2, limit.getOutstanding());
+		limit.release(Long.MAX_VALUE - 1, true);
+		assertEquals(2, limit.getLimit());
+		assertTrue(limit.tryAcquire());
+	}
+
+	public void testDecrease() {
+		AdmissionLimit limit = new AdmissionLimit(10, 2, 20, 100);
+		limit.tryAcquire();
+		limit.release(500, false);
+		assertEquals(9, limit.getLimit());
+		limit.tryAcquire();
+		limit.release(10, true);
+		assertEquals(8, limit.getLimit());
+	}
+
+	public void testMinimum() {
+		AdmissionLimit limit = new AdmissionLimit(3, 2, 20, 100);
+		for(int i = 0; i < 10; i++) {
+			limit.tryAcquire();
+			limit.release(10, true);
+		}
+		assertEquals(2, limit.getLimit());
+	}
+
+	public void testIncreaseWhenUsed() {
+		AdmissionLimit limit = new AdmissionLimit(4, 2, 5, 100);
+		for(int round = 0; round < 20; round++) {
+			while(limit.tryAcquire()) {
+			}
+			for(int i = limit.getOutstanding(); i > 0; i--) {
+				limit.release(10, false);
+			}
+		}
+		assertEquals(5, limit.getLimit());
+	}
+
+	public void testNoIncreaseWhenIdle() {
+		AdmissionLimit limit = new AdmissionLimit(4, 2, 20, 100);
+		for(int i = 0; i < 100; i++) {
+			limit.tryAcquire();
+			limit.release(10, false);
+		}
+		assertEquals(4, limit.getLimit());
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the admission limit");
+		suite.addTestSuite(AdmissionLimitTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,172 @@
+package test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import gmi.BinaryMessageCodec;
+import gmi.Codecs;
+import gmi.Message;
+import gmi.SerializedMessageCodec;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class BinaryMessageCodecTest extends TestCase {
+
+	BinaryMessageCodec codec = new BinaryMessageCodec();
+
+	Message request(Object result, Object[] arguments) {
+		Message message = new Message();
+		message.setMessageNumber(42);
+		message.setMethodId(3);
+		message.setMessageType("Request");
+		message.setMethodSignature("lease(String)");
+		message.setOriginalSender("#client#local");
+		message.setGroupName("group");
+		message.setLoad(5, 7);
+		message.setStateVersion(1L << 40);
+		message.setResult(result);
+		message.setArguments(arguments);
+		return message;
+	}
+
+	Message roundTrip(Message message) throws IOException {
+		return codec.decode(codec.encode(message));
+	}
+
+	public void testFields() throws IOException {
+		Message decoded = roundTrip(request("result", new Object[] { "a" }));
+		assertEquals(42, decoded.getMessageNumber());
+		assertEquals(3, decoded.getMethodId());
+		assertEquals("Request", decoded.getMessageType());
+		assertEquals("lease(String)", decoded.getMethodSignature());
+		assertEquals("#client#local", decoded.getOriginalSender());
+		assertEquals("group", decoded.getGroupName());
+		assertEquals(5, decoded.getInFlight());
+		assertEquals(7, decoded.getQueueDepth());
+		assertEquals(1L << 40, decoded.getStateVersion());
+		assertEquals("result", decoded.getResult());
+	}
+
+	public void testNulls() throws IOException {
+		Message decoded = roundTrip(new Message());
+		assertNull(decoded.getMessageType());
+		assertNull(decoded.getMethodSignature());
+		assertNull(decoded.getOriginalSender());
+		assertNull(decoded.getResult());
+		assertNull(decoded.getArguments());
+		decoded = roundTrip(request(null, new Object[] { null, "b", null }));
+		assertEquals(Arrays.asList(null, "b", null), Arrays.asList(decoded.getArguments()));
+	}
+
+	public void testOtherMessageType() throws IOException {
+		Message message = request(null, null);
+		message.setMessageType("Network");
+		assertEquals("Network", roundTrip(message).getMessageType());
+	}
+
+	public void testValues() throws IOException {
+		Object[] values = { -1, Integer.MIN_VALUE, Long.MAX_VALUE, -5L, true, false, 2.5 };
+		Object[] decoded = roundTrip(request(null, values)).getArguments();
+		assertEquals(Arrays.asList(values), Arrays.asList(decoded));
+	}
+
+	public void testArrays() throws IOException {
+		Message inner = request("inner", null);
+		Object[] values = { new byte[] { 1, 2, 3 }, new String[] { "x", null }, new Message[] { inner }, new Object[] { 1, "y" } };
+		Object[] decoded = roundTrip(request(null, values)).getArguments();
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) decoded[0]));
+		assertEquals(String[].class, decoded[1].getClass());
+		assertEquals(Arrays.asList("x", null), Arrays.asList((String[]) decoded[1]));
+		assertEquals(Message[].class, decoded[2].getClass());
+		assertEquals("inner", ((Message[]) decoded[2])[0].getResult());
+		assertEquals(Arrays.asList(1, "y"), Arrays.asList((Object[]) decoded[3]));
+	}
+
+	public void testSerializedValue() throws IOException {
+		ArrayList<String> list = new ArrayList<String>();
+		list.add("serialized");
+		assertEquals(list, roundTrip(request(list, null)).getResult());
+	}
+
+	public void testLongString() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		while(builder.length() < 100000) {
+			builder.append("long string \u00e6\u00f8\u00e5 \u20ac ");
+		}
+		String value = builder.toString();
+		Message decoded = roundTrip(request(value, new Object[] { value }));
+		assertEquals(value, decoded.getResult());
+		assertEquals(value, decoded.getArguments()[0]);
+	}
+
+	public void testRepeatedString() throws IOException {
+		Message decoded = roundTrip(request("group", new Object[] { "group", "group" }));
+		assertSame(decoded.getGroupName(), decoded.getResult());
+		assertSame(decoded.getResult(), decoded.getArguments()[1]);
+	}
+
+	public void testConnectionNames() throws IOException {
+		Message message = request("#server#local", new Object[] { request("nested", null) });
+		byte[] plain = codec.encode(message);
+		byte[] interned = codec.encode(message, "#client#local", "group");
+		assertTrue(interned.length < plain.length - "#client#local".length());
+		Message decoded = codec.decode(interned, "#client#local", "group");
+		assertEquals("#client#local", decoded.getOriginalSender());
+		assertEquals("group", decoded.getGroupName());
+		assertEquals("#server#local", decoded.getResult());
+		Message nested = (Message) decoded.getArguments()[0];
+		assertEquals("#client#local", nested.getOriginalSender());
+		assertEquals("group", nested.getGroupName());
+		// names not known on the connection are written in full
+		assertEquals("#client#local", codec.decode(codec.encode(message, "#other#local", null), "#other#local", "group").getOriginalSender());
+	}
+
+	public void testConnectionNamesUnknown() throws IOException {
+		byte[] data = codec.encode(request(null, null), "#client#local", "group");
+		try {
+			codec.decode(data);
+			fail("decoded a reference to a name of the connection without it");
+		}
+		catch(IOException e) {
+		}
+	}
+
+	public void testSerializedFallback() throws IOException {
+		byte[] data = new SerializedMessageCodec().encode(request("old", null));
+		assertEquals((byte) 0xAC, data[0]);
+		assertEquals((byte) 0xED, data[1]);
+		Message decoded = Codecs.decode(data);
+		assertEquals("old", decoded.getResult());
+		assertEquals(42, decoded.getMessageNumber());
+	}
+
+	public void testVersion() throws IOException {
+		byte[] data = codec.encode(request(null, null));
+		data[1]++;
+		try {
+			codec.decode(data);
+			fail("decoded a message of another version");
+		}
+		catch(IOException e) {
+			assertTrue(e.getMessage().startsWith("Unsupported message version"));
+		}
+	}
+
+	public void testNotBinary() {
+		try {
+			codec.decode(new byte[] { 1, 2, 3 });
+			fail("decoded a message without the magic byte");
+		}
+		catch(IOException e) {
+		}
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the binary message codec");
+		suite.addTestSuite(BinaryMessageCodecTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,34 @@
+package test;
+
+import gmi.MergingService;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MergingServiceTest extends TestCase {
+
+	public void testJoiningMemberAccepts() {
+		assertTrue(MergingService.acceptsState("#m2#local", "#m1#local", "Join", 200));
+	}
+
+	public void testMemberAheadRejects() {
+		// a member which has been running keeps its state when another joins
+		assertFalse(MergingService.acceptsState("#m2#local", "#m1#local", "Join", 5000));
+	}
+
+	public void testMergedPartitionAccepts() {
+		assertTrue(MergingService.acceptsState("#m2#local", "#m1#local", "Network", 5000));
+	}
+
+	public void testOwnStateRejected() {
+		assertFalse(MergingService.acceptsState("#m1#local", "#m1#local", "Join", 200));
+		assertFalse(MergingService.acceptsState("#m1#local", "#m1#local", "Network", 5000));
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for accepting the state of the leader");
+		suite.addTestSuite(MergingServiceTest.class);
+		return suite;
+	}
+
+}
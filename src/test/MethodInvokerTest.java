@@ -0,0 +1,87 @@
+package test;
+
+import java.lang.reflect.InvocationTargetException;
+
+import gmi.MethodInvoker;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MethodInvokerTest extends TestCase {
+
+	public static class Target {
+		public String concat(String a, int b) {
+			return a + b;
+		}
+		public long twice(long value) {
+			return 2 * value;
+		}
+		public Object fail(Object value) {
+			return (String) value;
+		}
+	}
+
+	Target target = new Target();
+
+	MethodInvoker invoker(String name, Class<?>... types) throws Exception {
+		return new MethodInvoker(Target.class.getMethod(name, types));
+	}
+
+	public void testInvoke() throws Exception {
+		assertEquals("a1", invoker("concat", String.class, int.class).invoke(target, new Object[] { "a", 1 }));
+		assertEquals("null1", invoker("concat", String.class, int.class).invoke(target, new Object[] { null, 1 }));
+	}
+
+	public void testWidening() throws Exception {
+		assertEquals(6L, invoker("twice", long.class).invoke(target, new Object[] { 3 }));
+	}
+
+	public void testWrongNumberOfArguments() throws Exception {
+		MethodInvoker invoker = invoker("concat", String.class, int.class);
+		try {
+			invoker.invoke(target, new Object[] { "a" });
+			fail("invoked with too few arguments");
+		}
+		catch(IllegalArgumentException e) {
+		}
+		try {
+			invoker.invoke(target, null);
+			fail("invoked without arguments");
+		}
+		catch(IllegalArgumentException e) {
+		}
+	}
+
+	public void testWrongArgumentType() throws Exception {
+		MethodInvoker invoker = invoker("concat", String.class, int.class);
+		try {
+			invoker.invoke(target, new Object[] { 1, 1 });
+			fail("invoked with a wrong argument type");
+		}
+		catch(IllegalArgumentException e) {
+		}
+		try {
+			invoker.invoke(target, new Object[] { "a", null });
+			fail("invoked with null for a primitive");
+		}
+		catch(IllegalArgumentException e) {
+		}
+	}
+
+	public void testExceptionOfTheMethod() throws Exception {
+		try {
+			invoker("fail", Object.class).invoke(target, new Object[] { 1 });
+			fail("no exception from the method");
+		}
+		catch(InvocationTargetException e) {
+			assertTrue(e.getTargetException() instanceof ClassCastException);
+		}
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the method invoker");
+		suite.addTestSuite(MethodInvokerTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,100 @@
+package test;
+
+import java.lang.reflect.Method;
+
+import gmi.Dispatcher;
+import gmi.ExternalGMIListener;
+import gmi.MethodTable;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MethodTableTest extends TestCase {
+
+	public interface Service extends ExternalGMIListener {
+		String echo(String value);
+	}
+
+	public interface Plain extends ExternalGMIListener {
+		int twice(int value);
+	}
+
+	/** As StubProcessor would generate it for Service, counting its calls. */
+	public static class Service_GmiDispatcher implements Dispatcher {
+
+		static int dispatched;
+
+		public String[] getSignatures() {
+			return new String[] { "StringechoString" };
+		}
+
+		public Method[] getMethods() {
+			try {
+				return new Method[] { Service.class.getMethod("echo", String.class) };
+			}
+			catch(NoSuchMethodException e) {
+				throw new ExceptionInInitializerError(e);
+			}
+		}
+
+		public Object dispatch(int index, Object target, Object[] args) throws Throwable {
+			dispatched++;
+			return ((Service) target).echo((String) args[0]);
+		}
+	}
+
+	public static class Server implements Service, Plain {
+		public String echo(String value) {
+			return value;
+		}
+		public int twice(int value) {
+			return 2 * value;
+		}
+	}
+
+	MethodTable table = new MethodTable();
+
+	protected void setUp() {
+		Service_GmiDispatcher.dispatched = 0;
+		table.addMethod(Server.class);
+	}
+
+	Method method(String name) {
+		for(Method m : table.getMethodTable("EGMI")) {
+			if(m.getName().equals(name)) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	public void testTableFromDispatcher() throws Exception {
+		Method echo = method("echo");
+		assertNotNull(echo);
+		assertEquals("StringechoString", table.getNameAndDescriptor(echo));
+		assertEquals("EGMI", table.getMethodType("StringechoString"));
+		assertEquals("a", table.getInvoker(echo).invoke(new Server(), new Object[] { "a" }));
+		assertEquals(1, Service_GmiDispatcher.dispatched);
+	}
+
+	public void testWithoutDispatcher() throws Exception {
+		Method twice = method("twice");
+		assertNotNull(twice);
+		assertEquals("inttwiceint", table.getNameAndDescriptor(twice));
+		assertEquals(4, table.getInvoker(twice).invoke(new Server(), new Object[] { 2 }));
+		assertEquals(0, Service_GmiDispatcher.dispatched);
+	}
+
+	public void testMethodIds() {
+		assertEquals(2, table.getExternalSignatures().length);
+		assertEquals("StringechoString", table.getExternalSignature(0));
+		assertEquals("inttwiceint", table.getExternalSignature(1));
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the method table");
+		suite.addTestSuite(MethodTableTest.class);
+		return suite;
+	}
+
+}
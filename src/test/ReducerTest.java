@@ -0,0 +1,102 @@
+package test;
+
+import java.util.function.BinaryOperator;
+
+import gmi.Reducer;
+import gmi.protocols.Reduce;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ReducerTest extends TestCase {
+
+	public static class Concat implements BinaryOperator<String> {
+		public String apply(String a, String b) {
+			return a + b;
+		}
+	}
+
+	public interface Methods {
+		@Reduce(Reduce.Function.ANY_TRUE) boolean any();
+		@Reduce(Reduce.Function.FIRST_NON_NULL) Object first();
+		@Reduce(Reduce.Function.SUM) long sum();
+		@Reduce(Reduce.Function.MIN) int min();
+		@Reduce(Reduce.Function.MAX) int max();
+		@Reduce(value = Reduce.Function.CUSTOM, operator = Concat.class) String concat();
+		@Reduce(Reduce.Function.CUSTOM) String missing();
+	}
+
+	Reducer reducer(String method) throws Exception {
+		return new Reducer(Methods.class.getMethod(method).getAnnotation(Reduce.class));
+	}
+
+	public void testAnyTrue() throws Exception {
+		Reducer reducer = reducer("any");
+		assertEquals(Boolean.FALSE, reducer.getValue());
+		assertFalse(reducer.add(false));
+		assertTrue(reducer.add(true));
+		assertTrue(reducer.add(false));
+		assertEquals(Boolean.TRUE, reducer.getValue());
+	}
+
+	public void testFirstNonNull() throws Exception {
+		Reducer reducer = reducer("first");
+		assertFalse(reducer.add(null));
+		assertTrue(reducer.add("a"));
+		assertTrue(reducer.add("b"));
+		assertEquals("a", reducer.getValue());
+	}
+
+	public void testSum() throws Exception {
+		Reducer reducer = reducer("sum");
+		assertNull(reducer.getValue());
+		reducer.add(1);
+		reducer.add(2L);
+		assertEquals(3L, reducer.getValue());
+		reducer.add(0.5);
+		assertEquals(3.5, ((Number) reducer.getValue()).doubleValue(), 0);
+	}
+
+	public void testMinMax() throws Exception {
+		Reducer min = reducer("min");
+		Reducer max = reducer("max");
+		for(int value : new int[] { 3, 1, 4, 1, 5 }) {
+			assertFalse(min.add(value));
+			assertFalse(max.add(value));
+		}
+		assertEquals(1, min.getValue());
+		assertEquals(5, max.getValue());
+	}
+
+	public void testCustom() throws Exception {
+		Reducer reducer = reducer("concat");
+		reducer.add("a");
+		reducer.add("b");
+		reducer.add("c");
+		assertEquals("abc", reducer.getValue());
+	}
+
+	public void testMissingOperator() throws Exception {
+		try {
+			reducer("missing");
+			fail("created a custom reducer without an operator");
+		}
+		catch(IllegalArgumentException e) {
+		}
+	}
+
+	public void testExceptionsLeftOut() throws Exception {
+		Reducer reducer = reducer("sum");
+		reducer.add(2);
+		reducer.add(new RuntimeException());
+		reducer.add(null);
+		assertEquals(2L, reducer.getValue());
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the reducer");
+		suite.addTestSuite(ReducerTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,77 @@
+package test;
+
+import gmi.Message;
+import gmi.ReplyCache;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ReplyCacheTest extends TestCase {
+
+	ReplyCache cache = new ReplyCache(2, 60000);
+
+	Message reply(String result) {
+		Message reply = new Message();
+		reply.setResult(result);
+		return reply;
+	}
+
+	public void testKey() {
+		assertEquals("client#5", ReplyCache.key("client", 5));
+	}
+
+	public void testExecutedOnce() {
+		String key = ReplyCache.key("client", 1);
+		assertNull(cache.begin(key));
+		assertSame(ReplyCache.PENDING, cache.begin(key));
+		Message reply = reply("done");
+		cache.complete(key, reply);
+		assertSame(reply, cache.begin(key));
+	}
+
+	public void testAbort() {
+		String key = ReplyCache.key("client", 1);
+		cache.begin(key);
+		cache.abort(key);
+		assertNull(cache.begin(key));
+	}
+
+	public void testAbortKeepsReply() {
+		String key = ReplyCache.key("client", 1);
+		cache.begin(key);
+		Message reply = reply("done");
+		cache.complete(key, reply);
+		cache.abort(key);
+		assertSame(reply, cache.begin(key));
+	}
+
+	public void testReplyOfOtherMember() {
+		String key = ReplyCache.key("client", 1);
+		Message reply = reply("elsewhere");
+		cache.complete(key, reply);
+		assertSame(reply, cache.begin(key));
+	}
+
+	public void testCapacity() {
+		cache.complete("a", reply("a"));
+		cache.complete("b", reply("b"));
+		cache.complete("c", reply("c"));
+		assertEquals(2, cache.size());
+		assertNull(cache.begin("a"));
+	}
+
+	public void testExpiry() throws Exception {
+		ReplyCache expiring = new ReplyCache(10, 20);
+		expiring.complete("a", reply("a"));
+		Thread.sleep(50);
+		assertNull(expiring.begin("a"));
+		assertEquals(1, expiring.size());
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the reply cache");
+		suite.addTestSuite(ReplyCacheTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,55 @@
+package test;
+
+import gmi.RttEstimator;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class RttEstimatorTest extends TestCase {
+
+	RttEstimator estimator = new RttEstimator(1000, 10, 60000);
+
+	public void testInitial() {
+		assertEquals(1000, estimator.getTimeout("server"));
+	}
+
+	public void testFirstSample() {
+		estimator.sample("server", 100);
+		// srtt + 4 * rtt/2
+		assertEquals(300, estimator.getTimeout("server"));
+		assertEquals(1000, estimator.getTimeout("other"));
+	}
+
+	public void testSmoothing() {
+		estimator.sample("server", 100);
+		estimator.sample("server", 100);
+		// rttvar 3/4 * 50, srtt 100
+		assertEquals(250, estimator.getTimeout("server"));
+		for(int i = 0; i < 100; i++) {
+			estimator.sample("server", 100);
+		}
+		// the variance decays towards the smoothed round trip time
+		assertTrue(estimator.getTimeout("server") <= 101);
+	}
+
+	public void testBackoff() {
+		estimator.sample("server", 100);
+		assertEquals(600, estimator.getTimeout("server", 1));
+		assertEquals(1200, estimator.getTimeout("server", 2));
+		assertEquals(60000, estimator.getTimeout("server", 40));
+	}
+
+	public void testBounds() {
+		estimator.sample("fast", 0);
+		assertEquals(10, estimator.getTimeout("fast"));
+		estimator.sample("slow", 100000);
+		assertEquals(60000, estimator.getTimeout("slow"));
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the round trip time estimator");
+		suite.addTestSuite(RttEstimatorTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,67 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gmi.ServerSelector;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ServerSelectorTest extends TestCase {
+
+	ServerSelector selector = new ServerSelector();
+
+	public void testEmptyView() {
+		assertNull(selector.choose(new ArrayList<String>()));
+	}
+
+	public void testSingleServer() {
+		selector.report("a", 100, 100);
+		assertEquals("a", selector.choose(Arrays.asList("a")));
+	}
+
+	public void testOutstanding() {
+		List<String> view = Arrays.asList("a", "b");
+		selector.sent("a");
+		for(int i = 0; i < 20; i++) {
+			assertEquals("b", selector.choose(view));
+		}
+		selector.done("a");
+		selector.sent("b");
+		for(int i = 0; i < 20; i++) {
+			assertEquals("a", selector.choose(view));
+		}
+	}
+
+	public void testReportedLoad() {
+		List<String> view = Arrays.asList("a", "b");
+		selector.report("b", 3, 2);
+		selector.sent("a");
+		selector.sent("a");
+		for(int i = 0; i < 20; i++) {
+			assertEquals("a", selector.choose(view));
+		}
+	}
+
+	public void testMostLoadedNeverChosen() {
+		List<String> view = Arrays.asList("a", "b", "c");
+		selector.sent("c");
+		int c = 0;
+		for(int i = 0; i < 300; i++) {
+			if("c".equals(selector.choose(view))) {
+				c++;
+			}
+		}
+		// c is always compared with one of the idle servers
+		assertEquals(0, c);
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the server selector");
+		suite.addTestSuite(ServerSelectorTest.class);
+		return suite;
+	}
+
+}
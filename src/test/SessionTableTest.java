@@ -0,0 +1,68 @@
+package test;
+
+import java.util.List;
+
+import gmi.SessionTable;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class SessionTableTest extends TestCase {
+
+	SessionTable table = new SessionTable(2, 60000);
+
+	public void testSession() {
+		table.requestReceived("client", 1);
+		table.requestReceived("client", 2);
+		table.replySent("client", 1);
+		List<SessionTable.Session> sessions = table.getSessions();
+		assertEquals(1, sessions.size());
+		SessionTable.Session session = sessions.get(0);
+		assertEquals("client", session.getClient());
+		assertEquals(2, session.getRequests());
+		assertEquals(1, session.getOutstanding());
+		assertEquals(2, session.getLastMessageNumber());
+		assertTrue(session.getFirstSeen() <= session.getLastSeen());
+	}
+
+	public void testCopies() {
+		table.requestReceived("client", 1);
+		SessionTable.Session session = table.getSessions().get(0);
+		table.replySent("client", 1);
+		table.requestReceived("client", 2);
+		assertEquals(1, session.getOutstanding());
+		assertEquals(1, session.getRequests());
+	}
+
+	public void testReplyWithoutSession() {
+		table.replySent("member", 1);
+		assertEquals(0, table.size());
+	}
+
+	public void testLeastRecentlySeenDropped() {
+		table.requestReceived("a", 1);
+		table.requestReceived("b", 1);
+		table.requestReceived("a", 2);
+		table.requestReceived("c", 1);
+		assertEquals(2, table.size());
+		List<SessionTable.Session> sessions = table.getSessions();
+		assertEquals("a", sessions.get(0).getClient());
+		assertEquals("c", sessions.get(1).getClient());
+	}
+
+	public void testIdle() throws Exception {
+		SessionTable idle = new SessionTable(10, 20);
+		idle.requestReceived("a", 1);
+		Thread.sleep(50);
+		idle.requestReceived("b", 1);
+		assertEquals(1, idle.getSessions().size());
+		assertEquals("b", idle.getSessions().get(0).getClient());
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the session table");
+		suite.addTestSuite(SessionTableTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,141 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gmi.ChunkOutputStream;
+import gmi.StateTransfer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class StateTransferTest extends TestCase {
+
+	List<byte[]> chunks(Object state, int size) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(state);
+		out.close();
+		byte[] data = bytes.toByteArray();
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		for(int offset = 0; offset < data.length; offset += size) {
+			chunks.add(Arrays.copyOfRange(data, offset, Math.min(data.length, offset+size)));
+		}
+		return chunks;
+	}
+
+	ArrayList<Integer> state() {
+		ArrayList<Integer> state = new ArrayList<Integer>();
+		for(int i = 0; i < 1000; i++) {
+			state.add(i);
+		}
+		return state;
+	}
+
+	public void testReassembly() throws Exception {
+		StateTransfer transfer = new StateTransfer("leader", 1, true, false);
+		List<byte[]> chunks = chunks(state(), 100);
+		assertTrue(chunks.size() > 1);
+		for(int index = 0; index < chunks.size(); index++) {
+			byte[] chunk = chunks.get(index);
+			assertTrue(transfer.follows("leader", 1, index));
+			assertTrue(transfer.add(chunk, StateTransfer.checksum(chunk)));
+		}
+		assertEquals(state(), transfer.getState());
+	}
+
+	public void testOrder() {
+		StateTransfer transfer = new StateTransfer("leader", 1, true, false);
+		byte[] chunk = { 1, 2, 3 };
+		assertFalse(transfer.follows("leader", 1, 1));
+		transfer.add(chunk, StateTransfer.checksum(chunk));
+		assertTrue(transfer.follows("leader", 1, 1));
+		assertFalse(transfer.follows("leader", 1, 0));
+		assertFalse(transfer.follows("leader", 1, 2));
+		assertFalse(transfer.follows("leader", 2, 1));
+		assertFalse(transfer.follows("other", 1, 1));
+	}
+
+	public void testChecksum() throws Exception {
+		StateTransfer transfer = new StateTransfer("leader", 1, true, false);
+		List<byte[]> chunks = chunks(state(), 100);
+		byte[] chunk = chunks.get(0);
+		long checksum = StateTransfer.checksum(chunk);
+		chunk[chunk.length-1]++;
+		assertFalse(transfer.add(chunk, checksum));
+		// a chunk which is not added is still expected
+		assertTrue(transfer.follows("leader", 1, 0));
+	}
+
+	public void testNotCollected() throws Exception {
+		byte[] chunk = chunks(state(), 100000).get(0);
+		StateTransfer checked = new StateTransfer("leader", 1, false, false);
+		assertFalse(checked.isPut());
+		assertTrue(checked.add(chunk, StateTransfer.checksum(chunk)));
+		assertNull(checked.getState());
+		StateTransfer streamed = new StateTransfer("leader", 1, true, true);
+		assertTrue(streamed.isStreaming());
+		assertTrue(streamed.add(chunk, StateTransfer.checksum(chunk)));
+		assertNull(streamed.getState());
+	}
+
+	public void testAbort() throws Exception {
+		StateTransfer transfer = new StateTransfer("leader", 1, true, false);
+		byte[] chunk = chunks(state(), 100).get(0);
+		transfer.add(chunk, StateTransfer.checksum(chunk));
+		transfer.abort();
+		try {
+			transfer.getState();
+			fail("state read from a transfer broken off");
+		}
+		catch(IOException e) {
+		}
+	}
+
+	public void testChunkOutput() throws Exception {
+		final List<byte[]> sent = new ArrayList<byte[]>();
+		final List<Boolean> lasts = new ArrayList<Boolean>();
+		ObjectOutputStream out = new ObjectOutputStream(new ChunkOutputStream(100) {
+			protected void chunk(int index, byte[] chunk, boolean last) {
+				assertEquals(sent.size(), index);
+				sent.add(chunk);
+				lasts.add(last);
+			}
+		});
+		out.writeObject(state());
+		out.close();
+		assertTrue(sent.size() > 1);
+		for(int index = 0; index < sent.size(); index++) {
+			assertTrue(sent.get(index).length <= 100);
+			assertEquals(index == sent.size()-1, lasts.get(index).booleanValue());
+		}
+		StateTransfer transfer = new StateTransfer("leader", 1, true, false);
+		for(byte[] chunk : sent) {
+			assertTrue(transfer.add(chunk, StateTransfer.checksum(chunk)));
+		}
+		assertEquals(state(), transfer.getState());
+	}
+
+	public void testChunkOutputEmpty() throws Exception {
+		final List<byte[]> sent = new ArrayList<byte[]>();
+		new ChunkOutputStream(100) {
+			protected void chunk(int index, byte[] chunk, boolean last) {
+				assertTrue(last);
+				sent.add(chunk);
+			}
+		}.close();
+		assertEquals(1, sent.size());
+		assertEquals(0, sent.get(0).length);
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the reassembly of chunked state");
+		suite.addTestSuite(StateTransferTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,93 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import gmi.StripedExecutor;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class StripedExecutorTest extends TestCase {
+
+	StripedExecutor executor = new StripedExecutor("test", 4, 100);
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+	public void testOrderPerKey() throws Exception {
+		final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(100);
+		for(int i = 0; i < 50; i++) {
+			final int n = i;
+			executor.execute("first", new Runnable() {
+				public void run() {
+					first.add(n);
+					done.countDown();
+				}
+			});
+			executor.execute("second", new Runnable() {
+				public void run() {
+					second.add(n);
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for(int i = 0; i < 50; i++) {
+			assertEquals(i, first.get(i).intValue());
+			assertEquals(i, second.get(i).intValue());
+		}
+	}
+
+	public void testNullKey() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		executor.execute(null, new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	public void testQueueFull() throws Exception {
+		StripedExecutor small = new StripedExecutor("small", 1, 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable blocking = new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				}
+				catch(InterruptedException e) {
+				}
+			}
+		};
+		small.execute("key", blocking);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		small.execute("key", blocking);
+		assertEquals(1, small.getQueueDepth());
+		try {
+			small.execute("key", blocking);
+			fail("queued a task in a full lane");
+		}
+		catch(RejectedExecutionException e) {
+		}
+		release.countDown();
+		small.shutdown();
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the striped executor");
+		suite.addTestSuite(StripedExecutorTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,89 @@
+package test;
+
+import gmi.VersionWaiters;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class VersionWaitersTest extends TestCase {
+
+	AtomicInteger ran = new AtomicInteger();
+	AtomicInteger expired = new AtomicInteger();
+
+	Runnable count(final AtomicInteger counter) {
+		return new Runnable() {
+			public void run() {
+				counter.incrementAndGet();
+			}
+		};
+	}
+
+	public void testRunsWhenVersionReached() {
+		VersionWaiters waiters = new VersionWaiters(60000);
+		waiters.advance(5);
+		waiters.await(5, count(ran), count(expired));
+		assertEquals(1, ran.get());
+		assertEquals(0, waiters.size());
+	}
+
+	public void testClientAhead() {
+		// the client has seen version 7, this member has applied 5
+		VersionWaiters waiters = new VersionWaiters(60000);
+		waiters.advance(5);
+		waiters.await(7, count(ran), count(expired));
+		assertEquals(0, ran.get());
+		assertEquals(1, waiters.size());
+		waiters.advance(6);
+		assertEquals(0, ran.get());
+		waiters.advance(7);
+		assertEquals(1, ran.get());
+		assertEquals(0, waiters.size());
+		assertEquals(0, expired.get());
+	}
+
+	public void testOlderVersionIgnored() {
+		VersionWaiters waiters = new VersionWaiters(60000);
+		waiters.advance(5);
+		waiters.advance(3);
+		waiters.await(4, count(ran), count(expired));
+		assertEquals(1, ran.get());
+	}
+
+	public void testExpired() throws InterruptedException {
+		VersionWaiters waiters = new VersionWaiters(50);
+		final CountDownLatch done = new CountDownLatch(1);
+		waiters.await(3, count(ran), new Runnable() {
+			public void run() {
+				expired.incrementAndGet();
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(0, waiters.size());
+		// the version arriving later does not run the task any more
+		waiters.advance(3);
+		assertEquals(0, ran.get());
+		assertEquals(1, expired.get());
+	}
+
+	public void testNotExpiredAfterRun() throws InterruptedException {
+		VersionWaiters waiters = new VersionWaiters(50);
+		waiters.await(1, count(ran), count(expired));
+		waiters.advance(1);
+		Thread.sleep(200);
+		assertEquals(1, ran.get());
+		assertEquals(0, expired.get());
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for the version waiters");
+		suite.addTestSuite(VersionWaitersTest.class);
+		return suite;
+	}
+
+}